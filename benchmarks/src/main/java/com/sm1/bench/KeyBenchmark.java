@@ -0,0 +1,53 @@
+package com.sm1.bench;
+
+import com.sm1.LocatorKey;
+import com.sm1.Locators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building store keys: the file-safe names the store used to be keyed by, against
+ * {@link LocatorKey} with URL normalization.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyBenchmark {
+
+    private final String url = "https://app.example.com/orders/42?tab=items#top";
+    private final By by = By.id("save");
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public String fileSafeString() {
+        return Locators.getFileSafeString(url + by);
+    }
+
+    @Benchmark
+    public long locatorKey() {
+        return LocatorKey.of(Locators.normalizeUrl(url), LocatorKey.describe(by)).getId();
+    }
+
+    @Benchmark
+    public String describe() {
+        return LocatorKey.describe(by);
+    }
+
+    @Benchmark
+    public String normalizeUrl() {
+        return Locators.normalizeUrl(url);
+    }
+}
@@ -0,0 +1,201 @@
+package com.sm1.bench;
+
+import com.sm1.BetterWebDriverWait;
+import com.sm1.LocatorStore;
+import com.sm1.WaitMetrics;
+import com.sm1.WaitMode;
+import com.sm1.fake.FakeBrowser;
+import com.sm1.fake.FakeElement;
+import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link BetterWebDriverWait} against {@link FakeBrowser}s from several threads and reports
+ * throughput and how long waits take when the primary locator is broken and a backup locator has
+ * to recover the element.
+ *
+ * <p>
+ * Each thread loads a series of order pages with its own browser and waits for the save button.
+ * The first page learns its backup locators. On later pages, a seeded fraction of the buttons
+ * have their id renamed, so {@code By.id} never matches them. Every run with the same settings
+ * breaks the same pages.
+ *
+ * <pre>
+ * java -Dharness.threads=8 -Dharness.latencyMillis=5 -cp target/benchmarks.jar com.sm1.bench.RecoveryHarness
+ * </pre>
+ *
+ * Settings, as system properties: {@code harness.threads} (4), {@code harness.pages} per thread
+ * (200), {@code harness.latencyMillis} per command (2), {@code harness.appearMillis} before the
+ * button is added (100), {@code harness.breakRate} (0.2), {@code harness.breakAfterMillis} after
+ * the page loads (0), {@code harness.pollMillis} (50), {@code harness.pageLearning} (false),
+ * {@code harness.waitMode} ({@code POLL}), {@code harness.navigate} to load pages through
+ * {@code navigate().to} (false) and {@code harness.seed} (1). The store defaults to
+ * {@code target/harness.db}.
+ */
+public class RecoveryHarness {
+
+    private static final String ORDERS = "https://app.example.com/orders/";
+    private static final By SAVE = By.id("save");
+    private static final boolean PAGE_LEARNING = Boolean.getBoolean("harness.pageLearning");
+    private static final WaitMode WAIT_MODE = WaitMode.valueOf(System.getProperty("harness.waitMode", "POLL"));
+    private static final boolean NAVIGATE = Boolean.getBoolean("harness.navigate");
+
+    private final int pages;
+    private final long latencyMillis;
+    private final long appearMillis;
+    private final double breakRate;
+    private final long breakAfterMillis;
+    private final long pollMillis;
+    private final WaitMetrics metrics;
+
+    RecoveryHarness(int pages, long latencyMillis, long appearMillis, double breakRate,
+                    long breakAfterMillis, long pollMillis, WaitMetrics metrics) {
+        this.pages = pages;
+        this.latencyMillis = latencyMillis;
+        this.appearMillis = appearMillis;
+        this.breakRate = breakRate;
+        this.breakAfterMillis = breakAfterMillis;
+        this.pollMillis = pollMillis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * What one thread saw: wait times in microseconds for intact and broken pages.
+     */
+    static final class Outcome {
+
+        final List<Long> intact = new ArrayList<>();
+        final List<Long> recovered = new ArrayList<>();
+        int timedOut;
+        int wrongElement;
+        long commands;
+
+        void add(Outcome other) {
+            intact.addAll(other.intact);
+            recovered.addAll(other.recovered);
+            timedOut += other.timedOut;
+            wrongElement += other.wrongElement;
+            commands += other.commands;
+        }
+    }
+
+    Outcome run(int thread) {
+        Random random = new Random(Long.getLong("harness.seed", 1) + thread);
+        boolean[] broken = new boolean[pages];
+        for (int i = 1; i < pages; i++) {
+            broken[i] = random.nextDouble() < breakRate;
+        }
+
+        FakeElement[] save = new FakeElement[1];
+        FakeBrowser browser = new FakeBrowser(url -> {
+            int page = Integer.parseInt(url.substring(ORDERS.length())) % pages;
+            save[0] = new FakeElement("save", "Save", "order-form", 2, appearMillis,
+                    broken[page] ? breakAfterMillis : -1);
+            return Arrays.asList(
+                    new FakeElement("cancel", "Cancel", "order-form", 1, 0, -1),
+                    save[0]);
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+
+        Outcome outcome = new Outcome();
+        for (int i = 0; i < pages; i++) {
+            String url = ORDERS + (thread * pages + i);
+            if (NAVIGATE) {
+                browser.navigate().to(url);
+            } else {
+                browser.get(url);
+            }
+
+            BetterWebDriverWait wait = new BetterWebDriverWait(browser, 10, pollMillis);
+            wait.withListener(metrics);
+            wait.withPageLearning(PAGE_LEARNING);
+            wait.withWaitMode(WAIT_MODE);
+
+            long started = System.nanoTime();
+            try {
+                WebElement found = wait.untilPresent(SAVE);
+                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+                (broken[i] ? outcome.recovered : outcome.intact).add(micros);
+                if (found != save[0]) {
+                    outcome.wrongElement++;
+                }
+            } catch (TimeoutException e) {
+                outcome.timedOut++;
+            }
+        }
+        outcome.commands = browser.getCommands();
+        return outcome;
+    }
+
+    private static String percentiles(List<Long> micros) {
+        if (micros.isEmpty()) {
+            return "";
+        }
+        List<Long> sorted = new ArrayList<>(micros);
+        Collections.sort(sorted);
+        StringBuilder line = new StringBuilder();
+        for (int p : new int[]{50, 90, 99}) {
+            int rank = (int) Math.ceil(sorted.size() * p / 100.0) - 1;
+            line.append(String.format("  p%d %8.1f ms", p, sorted.get(Math.max(rank, 0)) / 1000.0));
+        }
+        return line.append(String.format("  max %8.1f ms", sorted.get(sorted.size() - 1) / 1000.0)).toString();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (System.getProperty("betterwait.store") == null) {
+            System.setProperty("betterwait.store", "target/harness.db");
+        }
+
+        int threads = Integer.getInteger("harness.threads", 4);
+        WaitMetrics metrics = new WaitMetrics();
+        LocatorStore.get().setListener(metrics);
+
+        RecoveryHarness harness = new RecoveryHarness(
+                Integer.getInteger("harness.pages", 200),
+                Long.getLong("harness.latencyMillis", 2),
+                Long.getLong("harness.appearMillis", 100),
+                Double.parseDouble(System.getProperty("harness.breakRate", "0.2")),
+                Long.getLong("harness.breakAfterMillis", 0),
+                Long.getLong("harness.pollMillis", 50),
+                metrics);
+
+        Outcome[] outcomes = new Outcome[threads];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> outcomes[thread] = harness.run(thread), "harness-" + t);
+            workers.add(worker);
+        }
+
+        long started = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        Outcome total = new Outcome();
+        for (Outcome outcome : outcomes) {
+            total.add(outcome);
+        }
+        int waits = total.intact.size() + total.recovered.size() + total.timedOut;
+
+        System.out.printf("waits          %6d in %.1f s, %.1f waits/s over %d threads%n",
+                waits, seconds, waits / seconds, threads);
+        System.out.printf("intact         %6d%s%n", total.intact.size(), percentiles(total.intact));
+        System.out.printf("recovered      %6d%s%n", total.recovered.size(), percentiles(total.recovered));
+        System.out.printf("timed out      %6d%n", total.timedOut);
+        System.out.printf("wrong element  %6d%n", total.wrongElement);
+        System.out.printf("commands       %6.1f per wait%n", waits == 0 ? 0.0 : (double) total.commands / waits);
+        System.out.println(metrics.toJson());
+    }
+}
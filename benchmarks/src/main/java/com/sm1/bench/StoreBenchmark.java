@@ -0,0 +1,111 @@
+package com.sm1.bench;
+
+import com.sm1.BetterFluentWait;
+import com.sm1.Fingerprint;
+import com.sm1.LocatorKey;
+import com.sm1.LocatorSnapshot;
+import com.sm1.LocatorStore;
+import com.sm1.Locators;
+import com.sm1.fake.StubElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Learning and recovering backup locators through {@link Locators}, raw reads and writes of the
+ * store underneath the cache, and reads from a 10,000 entry snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dbetterwait.store=target/bench-store.db")
+@State(Scope.Benchmark)
+public class StoreBenchmark {
+
+    private static final String LEGACY_JSON = "{\"strategies\":["
+            + "{\"type\":\"id\",\"kind\":\"css\",\"selector\":\"[id=\\\"save\\\"]\",\"score\":0.95},"
+            + "{\"type\":\"text\",\"kind\":\"xpath\",\"selector\":\"//button[text()]\",\"score\":0.6}]}";
+
+    private StubDriver driver;
+    private WebElement element;
+    private BetterFluentWait<WebDriver> wait;
+    private LocatorStore store;
+    private LocatorKey key;
+    private Fingerprint fingerprint;
+    private LocatorSnapshot snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        element = new StubElement();
+        driver = new StubDriver("https://app.example.com/orders/42", element);
+        wait = new BetterFluentWait<WebDriver>(driver);
+
+        Locators.updateLocator(element, "By.id: save", driver);
+
+        store = LocatorStore.get();
+        key = LocatorKey.of("https://app.example.com/orders/{id}", "By.id: raw");
+        fingerprint = Fingerprint.fromJson(LEGACY_JSON, System.currentTimeMillis());
+        store.put(key, fingerprint);
+
+        SortedMap<Long, Fingerprint> exported = new TreeMap<>();
+        for (int i = 0; i < 10000; i++) {
+            exported.put(LocatorKey.of("https://app.example.com/page" + i, "By.id: raw").getId(), fingerprint);
+        }
+        exported.put(key.getId(), fingerprint);
+        Path file = Paths.get("target/bench.snapshot");
+        LocatorSnapshot.write(exported, file);
+        snapshot = LocatorSnapshot.open(file);
+    }
+
+    @Benchmark
+    public boolean updateLocator() {
+        return Locators.updateLocator(element, "By.id: save", driver);
+    }
+
+    @Benchmark
+    public boolean updateLocatorOnlyIfChanged() {
+        return Locators.updateLocator(element, "By.id: save", driver, true);
+    }
+
+    @Benchmark
+    public WebElement recoverFromStore() {
+        return wait.tryAltLocator("By.id: save", driver);
+    }
+
+    @Benchmark
+    public WebElement tryAltLocatorsJson() {
+        return Locators.tryAltLocators(LEGACY_JSON, driver);
+    }
+
+    @Benchmark
+    public Fingerprint storeRead() {
+        return store.get(key);
+    }
+
+    @Benchmark
+    public Fingerprint snapshotRead() {
+        return snapshot.get(key);
+    }
+
+    @Benchmark
+    public void storeWrite() {
+        store.put(key, fingerprint);
+    }
+}
@@ -0,0 +1,142 @@
+package com.sm1.bench;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A driver that answers the BetterWait scripts instantly, as if the helpers were already installed
+ * in the page, so benchmarks measure the Java side of a wait without a browser.
+ */
+public class StubDriver implements WebDriver, JavascriptExecutor {
+
+    private final String url;
+    private final WebElement element;
+    private final Object generated;
+
+    private volatile boolean recoverable = true;
+    private int misses;
+
+    public StubDriver(String url, WebElement element) {
+        this.url = url;
+        this.element = element;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("strategies", Arrays.asList(
+                Arrays.asList("id", "css", "[id=\"save\"]", 0.95),
+                Arrays.asList("anchored", "css", "[id=\"form\"] > DIV:nth-of-type(3) > BUTTON:nth-of-type(1)", 0.7),
+                Arrays.asList("tag-path", "css", "BODY DIV:nth-of-type(1) FORM:nth-of-type(1) DIV:nth-of-type(3) BUTTON:nth-of-type(1)", 0.4),
+                Arrays.asList("text", "xpath", "//button[text()[contains(normalize-space(.), \"Save\")]]", 0.6)));
+        result.put("partial", false);
+        this.generated = result;
+    }
+
+    /**
+     * @param recoverable Whether the recovery script finds the element.
+     */
+    public void setRecoverable(boolean recoverable) {
+        this.recoverable = recoverable;
+    }
+
+    /**
+     * @param lookups How many of the next element lookups find nothing.
+     */
+    public void missNext(int lookups) {
+        this.misses = lookups;
+    }
+
+    @Override
+    public Object executeScript(String script, Object... args) {
+        if (script.contains("bw.generateLocators")) {
+            return Arrays.asList(url, generated);
+        }
+        if (script.contains("bw.tryLocators")) {
+            return Arrays.asList(url, recoverable ? Arrays.asList(element, 0L) : null);
+        }
+        return null;
+    }
+
+    @Override
+    public Object executeAsyncScript(String script, Object... args) {
+        return executeScript(script, args);
+    }
+
+    @Override
+    public void get(String url) {
+    }
+
+    @Override
+    public String getCurrentUrl() {
+        return url;
+    }
+
+    @Override
+    public String getTitle() {
+        return "";
+    }
+
+    @Override
+    public List<WebElement> findElements(By by) {
+        if (misses > 0) {
+            misses--;
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(element);
+    }
+
+    @Override
+    public WebElement findElement(By by) {
+        if (misses > 0) {
+            misses--;
+            throw new NoSuchElementException("Unable to locate element: " + by);
+        }
+        return element;
+    }
+
+    @Override
+    public String getPageSource() {
+        return "";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void quit() {
+    }
+
+    @Override
+    public Set<String> getWindowHandles() {
+        return Collections.singleton("main");
+    }
+
+    @Override
+    public String getWindowHandle() {
+        return "main";
+    }
+
+    @Override
+    public TargetLocator switchTo() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Navigation navigate() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Options manage() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,101 @@
+package com.sm1.bench;
+
+import com.sm1.BetterFluentWait;
+import com.sm1.BetterWebDriverWait;
+import com.sm1.LearningMode;
+import com.sm1.fake.StubElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * {@link BetterFluentWait#until(Function)} against a stub driver: a condition that holds at once,
+ * a lookup that learns its locator every time, and a lookup that misses a number of polls first,
+ * trying its stored backup locators after each miss. Lookups that miss a number of times without
+ * stored backups are waited for both through {@link BetterWebDriverWait#untilPresent(By)} and
+ * through the throwing {@link ExpectedConditions}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dbetterwait.store=target/bench-wait.db")
+@State(Scope.Benchmark)
+public class WaitBenchmark {
+
+    private static final By SAVE = By.id("save");
+    private static final By FLAKY = By.id("flaky");
+
+    @Param({"1", "10"})
+    public int failures;
+
+    private StubDriver driver;
+    private WebElement element;
+
+    @Setup
+    public void setUp() {
+        element = new StubElement();
+        driver = new StubDriver("https://app.example.com/orders/42", element);
+        // stores backup locators for the flaky lookup, so its misses try them
+        waitFor(LearningMode.SYNC).until(ExpectedConditions.presenceOfElementLocated(FLAKY));
+    }
+
+    private BetterFluentWait<WebDriver> waitFor(LearningMode mode) {
+        return new BetterFluentWait<WebDriver>(driver)
+                .withTimeout(10, TimeUnit.SECONDS)
+                .pollingEvery(0, TimeUnit.MILLISECONDS)
+                .ignoring(NoSuchElementException.class)
+                .withLearningMode(mode);
+    }
+
+    @Benchmark
+    public WebElement untilImmediate() {
+        return waitFor(LearningMode.OFF).until(d -> element);
+    }
+
+    @Benchmark
+    public WebElement untilLearningSync() {
+        return waitFor(LearningMode.SYNC).until(ExpectedConditions.presenceOfElementLocated(SAVE));
+    }
+
+    @Benchmark
+    public WebElement untilAfterFailures() {
+        driver.setRecoverable(false);
+        driver.missNext(failures);
+        return waitFor(LearningMode.OFF).until(ExpectedConditions.presenceOfElementLocated(FLAKY));
+    }
+
+    @Benchmark
+    public WebElement untilPresentAfterMisses() {
+        driver.setRecoverable(false);
+        driver.missNext(failures);
+        BetterWebDriverWait wait = new BetterWebDriverWait(driver, 10, 0);
+        wait.withLearningMode(LearningMode.OFF);
+        return wait.untilPresent(SAVE);
+    }
+
+    @Benchmark
+    public WebElement untilPresentAfterMissesThrowing() {
+        driver.setRecoverable(false);
+        driver.missNext(failures);
+        BetterWebDriverWait wait = new BetterWebDriverWait(driver, 10, 0);
+        wait.withLearningMode(LearningMode.OFF);
+        return wait.until(ExpectedConditions.presenceOfElementLocated(SAVE));
+    }
+}
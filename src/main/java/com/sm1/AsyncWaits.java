@@ -0,0 +1,31 @@
+package com.sm1;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the scheduler shared by every {@link BetterFluentWait#untilAsync} that was not given its
+ * own. Its daemon threads only run evaluations, never sleep through a polling interval, so a few of
+ * them can drive many sessions.
+ */
+final class AsyncWaits {
+
+    static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory());
+
+    private AsyncWaits() {
+    }
+
+    private static class ThreadFactory implements java.util.concurrent.ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "BetterWait-async-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
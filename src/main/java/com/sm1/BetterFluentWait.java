@@ -3,7 +3,8 @@ package com.sm1;
 import org.openqa.selenium.*;
 
 
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.openqa.selenium.support.ui.*;
@@ -19,27 +20,44 @@ import com.google.common.collect.Lists;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriverException;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
-
-import org.mapdb.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 public class BetterFluentWait<T> implements Wait<T> {
 
     public static final Duration FIVE_HUNDRED_MILLIS = new Duration(500, MILLISECONDS);
 
+    private static final Logger LOG = Logger.getLogger(BetterFluentWait.class.getName());
+    private static final RateLimitedLog FALLBACK_FAILURES = new RateLimitedLog(LOG, Level.INFO);
+    // presenceOfElementLocated and visibilityOfElementLocated are anonymous classes in here
+    private static final String SELENIUM_CONDITIONS = ExpectedConditions.class.getName();
+
     private final T input;
     private final Clock clock;
     private final Sleeper sleeper;
 
     private Duration timeout = FIVE_HUNDRED_MILLIS;
-    private Duration interval = FIVE_HUNDRED_MILLIS;
+    private PollingStrategy pollingStrategy = PollingStrategies.fixed(500, MILLISECONDS);
     private Supplier<String> messageSupplier = () -> null;
+    private LearningMode learningMode = LearningMode.SYNC;
+    private RelearnPolicy relearnPolicy = RelearnPolicy.always();
+    private boolean pageLearning;
+    private ScheduledExecutorService scheduler = AsyncWaits.SCHEDULER;
+    private WaitListener listener;
 
     private List<Class<? extends Throwable>> ignoredExceptions = Lists.newLinkedList();
+    // whether each exception class seen so far is ignored; cleared when the list changes
+    private final Map<Class<?>, Boolean> ignoredLookup = new ConcurrentHashMap<>();
 
     /**
      * @param input The input value to pass to the evaluated conditions.
@@ -72,6 +90,17 @@ public class BetterFluentWait<T> implements Wait<T> {
         return this;
     }
 
+    /**
+     * @return the configured timeout, in milliseconds.
+     */
+    long getTimeoutMillis() {
+        return timeout.in(MILLISECONDS);
+    }
+
+    Clock getClock() {
+        return clock;
+    }
+
     /**
      * Sets the message to be displayed when time expires.
      *
@@ -106,7 +135,88 @@ public class BetterFluentWait<T> implements Wait<T> {
      * @return A self reference.
      */
     public BetterFluentWait<T> pollingEvery(long duration, TimeUnit unit) {
-        this.interval = new Duration(duration, unit);
+        this.pollingStrategy = PollingStrategies.fixed(duration, unit);
+        return this;
+    }
+
+    /**
+     * Sets how long to sleep between evaluations using a strategy, such as exponential backoff or
+     * a schedule learned from earlier waits. Replaces any interval set by
+     * {@link #pollingEvery(long, TimeUnit)}. Sleeps never run past the timeout.
+     *
+     * @param strategy The polling strategy.
+     * @return A self reference.
+     * @see PollingStrategies
+     */
+    public BetterFluentWait<T> pollingWith(PollingStrategy strategy) {
+        this.pollingStrategy = checkNotNull(strategy);
+        return this;
+    }
+
+    /**
+     * Sets how backup locators are learned for elements returned by this wait. The default is
+     * {@link LearningMode#SYNC}.
+     *
+     * @param mode The learning mode.
+     * @return A self reference.
+     */
+    public BetterFluentWait<T> withLearningMode(LearningMode mode) {
+        this.learningMode = checkNotNull(mode);
+        return this;
+    }
+
+    /**
+     * Skips learning a locator again on a page if its backup locators there were refreshed within
+     * the given duration. By default every successful wait learns.
+     *
+     * @param duration How long learned backup locators are considered fresh.
+     * @param unit The unit of time.
+     * @return A self reference.
+     */
+    public BetterFluentWait<T> skipRelearningFor(long duration, TimeUnit unit) {
+        this.relearnPolicy = relearnPolicy.withTtl(duration, unit);
+        return this;
+    }
+
+    /**
+     * Learns every input, button, link and element with an id or name on a page in one script
+     * call, the first time a wait on this page succeeds in the run. A locator already learned on
+     * the page in this run, with the page or on its own, is not learned again. The page is the one
+     * {@link PageContext} remembers for the driver, so no wait pays a {@code getCurrentUrl()} call
+     * for it; register {@link PageContext#listener()} so a navigation is noticed before the next
+     * script reports it. Off by default.
+     *
+     * @param pageLearning Whether to learn whole pages.
+     * @return A self reference.
+     * @see Locators#updatePageLocators(WebDriver)
+     */
+    public BetterFluentWait<T> withPageLearning(boolean pageLearning) {
+        this.pageLearning = pageLearning;
+        return this;
+    }
+
+    /**
+     * Sets when a successful wait learns its locator again. The default is
+     * {@link RelearnPolicy#always()}.
+     *
+     * @param policy The re-learn policy.
+     * @return A self reference.
+     */
+    public BetterFluentWait<T> withRelearnPolicy(RelearnPolicy policy) {
+        this.relearnPolicy = checkNotNull(policy);
+        return this;
+    }
+
+    /**
+     * Reports polls, timings, recovery and learning for this wait's conditions to a listener. Store
+     * latency is reported separately, through {@link LocatorStore#setListener(WaitListener)}.
+     *
+     * @param listener The listener, or null for none.
+     * @return A self reference.
+     * @see WaitMetrics
+     */
+    public BetterFluentWait<T> withListener(WaitListener listener) {
+        this.listener = listener;
         return this;
     }
 
@@ -120,6 +230,7 @@ public class BetterFluentWait<T> implements Wait<T> {
      */
     public <K extends Throwable> BetterFluentWait<T> ignoreAll(Collection<Class<? extends K>> types) {
         ignoredExceptions.addAll(types);
+        ignoredLookup.clear();
         return this;
     }
 
@@ -170,82 +281,634 @@ public class BetterFluentWait<T> implements Wait<T> {
 
 
 
-    private <V> V BetterUntil(Function<? super T, V> isTrue, boolean doMap) {
+    /**
+     * Like {@link #until(Function)}, but returns at once. Evaluations and sleeps are scheduled on
+     * the executor set by {@link #withScheduler(ScheduledExecutorService)}, so no thread is parked
+     * while the condition is not yet satisfied. Ignored exceptions, the timeout and backup locator
+     * recovery and learning behave as they do for {@link #until(Function)}.
+     *
+     * <p>
+     * Cancelling the returned future stops further evaluations.
+     *
+     * @param isTrue the parameter to pass to the {@link ExpectedCondition}
+     * @param <V> The function's expected return type.
+     * @return a future completed with the function's return value, or exceptionally with a
+     *         {@link TimeoutException} or the unignored exception.
+     */
+    public <V> CompletableFuture<V> untilAsync(Function<? super T, V> isTrue) {
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        WaitState<V> state = new WaitState<>(isTrue, true, true);
+        scheduler.execute(() -> step(state, future));
+        return future;
+    }
+
+    /**
+     * Sets the executor that drives {@link #untilAsync(Function)}. By default a small pool of daemon
+     * threads is shared by every wait in the JVM. On newer JDKs a scheduler backed by virtual
+     * threads can be supplied here.
+     *
+     * @param scheduler The executor to run evaluations on.
+     * @return A self reference.
+     */
+    public BetterFluentWait<T> withScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = checkNotNull(scheduler);
+        return this;
+    }
+
+
+
+    /**
+     * Waits until every condition holds, evaluating them together in one polling loop. Each poll
+     * evaluates only the conditions that are still pending, so the wait lasts as long as the slowest
+     * condition rather than the sum of all of them.
+     *
+     * @param conditions The conditions to wait for.
+     * @param <V> The functions' expected return type.
+     * @return each condition's return value, in the order given.
+     * @throws TimeoutException If the timeout expires before every condition holds.
+     */
+    public <V> List<V> untilAll(List<? extends Function<? super T, V>> conditions) {
+        return untilBatch(conditions, true, null);
+    }
+
+    /**
+     * Waits until at least one of the conditions holds, evaluating them together in one polling
+     * loop.
+     *
+     * @param conditions The conditions to wait for.
+     * @param <V> The functions' expected return type.
+     * @return each condition's return value, in the order given, or null for conditions that did not
+     *         hold yet.
+     * @throws TimeoutException If the timeout expires before any condition holds.
+     */
+    public <V> List<V> untilAny(List<? extends Function<? super T, V>> conditions) {
+        return untilBatch(conditions, false, null);
+    }
+
+    /**
+     * Waits until an element is present for every locator. Locators are looked up together with one
+     * {@code executeScript} call per poll, which also tries the stored backup locators of those it
+     * cannot find. The input must be a {@link WebDriver} that implements
+     * {@link JavascriptExecutor}.
+     *
+     * @param locators The locators to wait for.
+     * @return the element for each locator, in the order given.
+     * @throws TimeoutException If the timeout expires before every element is present.
+     */
+    public List<WebElement> untilAllPresent(List<By> locators) {
+        PresenceBatch batch = new PresenceBatch(locators);
+        return untilBatch(driverConditions(batch.conditions()), true, results -> batch.refresh((WebDriver) input, results, listener));
+    }
+
+    /**
+     * Waits until an element is present for at least one of the locators. Locators are looked up
+     * together with one {@code executeScript} call per poll, which also tries the stored backup
+     * locators of those it cannot find. The input must be a {@link WebDriver} that implements
+     * {@link JavascriptExecutor}.
+     *
+     * @param locators The locators to wait for.
+     * @return the element for each locator, in the order given, or null where none was found yet.
+     * @throws TimeoutException If the timeout expires before any element is present.
+     */
+    public List<WebElement> untilAnyPresent(List<By> locators) {
+        PresenceBatch batch = new PresenceBatch(locators);
+        return untilBatch(driverConditions(batch.conditions()), false, results -> batch.refresh((WebDriver) input, results, listener));
+    }
+
+
+
+    @SuppressWarnings("unchecked")
+    private <V> List<Function<? super T, V>> driverConditions(List<? extends ExpectedCondition<V>> conditions) {
+        // the conditions only run against the input, which the caller has said is a WebDriver
+        return (List<Function<? super T, V>>) (List<?>) conditions;
+    }
+
+    private <V> List<V> untilBatch(List<? extends Function<? super T, V>> conditions, boolean all,
+                                   Consumer<List<V>> beforeRound) {
+
+        List<WaitState<V>> states = new ArrayList<>();
+        for (Function<? super T, V> condition : conditions) {
+            states.add(new WaitState<>(condition, true));
+        }
+        List<V> results = new ArrayList<>(Collections.nCopies(states.size(), null));
+        WaitState<List<V>> batch = new WaitState<>(new Batch<>(conditions, all, beforeRound), false);
 
-        long end = clock.laterBy(timeout.in(MILLISECONDS));
-        Throwable lastException;
         while (true) {
 
-            try {
-                V value = isTrue.apply(input);
-                if (value != null && (Boolean.class != value.getClass() || Boolean.TRUE.equals(value))) {
+            batch.attempt++;
+            batch.failedPart = null;
+            batch.lastException = null;
+
+            if (beforeRound != null) {
+                try {
+                    beforeRound.accept(results);
+                } catch (Throwable e) {
+                    // a failed lookup is ignored or not like a failed condition, and retried next round
+                    batch.lastException = propagateIfNotIgnored(e);
+                }
+            }
 
-                    if(doMap && (value instanceof WebElement)){
+            if (batch.lastException == null) {
 
-                        Locators.updateLocator((WebElement) value, isTrue.toString(), (WebDriver) input);
+                int satisfied = 0;
+                for (int i = 0; i < states.size(); i++) {
+                    WaitState<V> state = states.get(i);
+                    if (results.get(i) == null) {
+                        results.set(i, poll(state));
                     }
+                    if (results.get(i) != null) {
+                        satisfied++;
+                    } else if (state.lastException != null || state.missed) {
+                        batch.failedPart = state;
+                    }
+                }
 
-                    return value;
+                if (all ? satisfied == states.size() : satisfied > 0) {
+                    return results;
                 }
+            }
 
-                // Clear the last exception; if another retry or timeout exception would
-                // be caused by a false or null value, the last exception is not the
-                // cause of the timeout.
-                lastException = null;
-            } catch (Throwable e) {
+            sleep(nextDelay(batch));
+        }
+    }
 
-                if(doMap){
+    /**
+     * A batch of conditions as one condition, which also stands in for the batch in timeout
+     * messages and polling keys.
+     */
+    private static final class Batch<T, V> implements Function<T, List<V>> {
 
-                    System.out.println("Desired locator failed: " + isTrue.toString());
-                    System.out.println("Original message: " + e.getMessage());
+        private final List<? extends Function<? super T, V>> conditions;
+        private final boolean all;
+        private final Consumer<List<V>> beforeRound;
 
-                    V element = (V) tryAltLocator(isTrue.toString(), (WebDriver) input);
+        Batch(List<? extends Function<? super T, V>> conditions, boolean all, Consumer<List<V>> beforeRound) {
+            this.conditions = conditions;
+            this.all = all;
+            this.beforeRound = beforeRound;
+        }
 
-                    if(element != null){
-                        return element;
-                    }
-                    else {
-                        lastException = propagateIfNotIgnored(e);
-                    }
+        /**
+         * Evaluates every condition once, after the batch's shared lookup, without recovering or
+         * learning locators.
+         *
+         * @return each condition's value, or null for those that do not hold, if enough of them
+         *         hold; otherwise null.
+         */
+        @Override
+        public List<V> apply(T input) {
+            List<V> results = new ArrayList<>(Collections.nCopies(conditions.size(), null));
+            if (beforeRound != null) {
+                beforeRound.accept(results);
+            }
 
+            int satisfied = 0;
+            for (int i = 0; i < conditions.size(); i++) {
+                V value = conditions.get(i).apply(input);
+                if (holds(value)) {
+                    results.set(i, value);
+                    satisfied++;
+                }
+            }
+            return (all ? satisfied == conditions.size() : satisfied > 0) ? results : null;
+        }
+
+        @Override
+        public String toString() {
+            return (all ? "all of " : "any of ") + conditions;
+        }
+    }
+
+    /**
+     * @return true if a condition returned something other than null or false.
+     */
+    private static boolean holds(Object value) {
+        return value != null && (Boolean.class != value.getClass() || Boolean.TRUE.equals(value));
+    }
+
+    private <V> V BetterUntil(Function<? super T, V> isTrue, boolean doMap) {
+
+        WaitState<V> state = new WaitState<>(isTrue, doMap, true);
+
+        if (input instanceof WebDriver) {
+            // learning an earlier wait left for this driver
+            LocatorLearner.get().runNext((WebDriver) input);
+        }
+
+        while (true) {
+
+            V value = poll(state);
+            if (value != null) {
+                return value;
+            }
+
+            sleep(nextDelay(state));
+        }
+    }
+
+    /**
+     * Sleeps between polls. Learning queued for the driver runs first, on this thread, for as long
+     * as the sleep lasts.
+     */
+    private void sleep(long delay) {
+
+        long wakeAt = clock.laterBy(delay);
+        if (input instanceof WebDriver) {
+            LocatorLearner learner = LocatorLearner.get();
+            while (clock.isNowBefore(wakeAt) && learner.runNext((WebDriver) input)) {
+                // each call learned one queued element or page
+            }
+        }
+
+        try {
+            sleeper.sleep(new Duration(Math.max(wakeAt - clock.now(), 0), MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebDriverException(e);
+        }
+    }
+
+    private <V> void step(WaitState<V> state, CompletableFuture<V> future) {
+
+        if (future.isDone()) {
+            return;
+        }
+
+        try {
+            V value = poll(state);
+            if (value != null) {
+                future.complete(value);
+                return;
+            }
+
+            scheduler.schedule(() -> step(state, future), nextDelay(state), MILLISECONDS);
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * The progress of one call to {@code until} or {@code untilAsync}.
+     */
+    private final class WaitState<V> {
+
+        final Function<? super T, V> isTrue;
+        final boolean doMap;
+        final String conditionKey;
+        final long start;
+        final long end;
+
+        // set for conditions that report misses without throwing
+        final ElementProbe probe;
+        // whether timeouts count towards the locator's circuit breaker
+        final boolean guarded;
+        // the locator's open breaker on the confirmed page, if it has one
+        final CircuitBreakers.Breaker breaker;
+        // set if that breaker cut this wait short, rather than letting it run as the retry
+        final CircuitBreakers.Breaker shortCircuit;
+
+        int attempt;
+        Throwable lastException;
+        // whether the last evaluation was a probe miss
+        boolean missed;
+        // for a batch, the condition whose failure explains a timeout
+        WaitState<?> failedPart;
+        // a redirect passed over so the primary locator could be evaluated again
+        Redirects.Redirect rechecking;
+        // whether a fallback already read the driver's URL
+        boolean urlChecked;
+
+        WaitState(Function<? super T, V> isTrue, boolean doMap) {
+            this(isTrue, doMap, false);
+        }
+
+        /**
+         * @param guarded Whether the wait is subject to the locator's circuit breaker. Conditions
+         *        polled as part of a batch are not, since the batch's timeout is not theirs alone.
+         */
+        WaitState(Function<? super T, V> isTrue, boolean doMap, boolean guarded) {
+            this.isTrue = isTrue;
+            this.conditionKey = LocatorKey.describe(isTrue);
+            // learning and recovery need a driver to run scripts against, and a condition whose
+            // value a recovered element can stand in for
+            this.doMap = doMap && input instanceof WebDriver && returnsElement(isTrue)
+                    && LocatorKey.isElementLocator(conditionKey);
+            this.probe = isTrue instanceof ElementProbe && input instanceof WebDriver ? (ElementProbe) isTrue : null;
+            this.guarded = guarded && this.doMap;
+            this.start = clock.now();
+            this.breaker = this.guarded ? CircuitBreakers.find((WebDriver) input, conditionKey) : null;
+            this.shortCircuit = breaker != null && !breaker.tryRetry(start) ? breaker : null;
+            long millis = timeout.in(MILLISECONDS);
+            this.end = clock.laterBy(shortCircuit == null ? millis : Math.min(millis, CircuitBreakers.probeMillis()));
+        }
+
+        /**
+         * @return what made the last evaluation fail, building the exception for a probe miss.
+         */
+        Throwable cause() {
+            if (failedPart != null) {
+                return failedPart.cause();
+            }
+            return missed ? probe.missing() : lastException;
+        }
+    }
+
+    /**
+     * @return true if the condition waits for one element and returns it, so a recovered element
+     *         is a valid answer for it.
+     */
+    private static boolean returnsElement(Object condition) {
+        return condition instanceof ElementProbe || condition instanceof ObservedElementLocated
+                || condition.getClass().getName().startsWith(SELENIUM_CONDITIONS);
+    }
+
+    /**
+     * Evaluates the condition once. A single-element condition falls back to stored backup locators
+     * if it throws or misses.
+     *
+     * @return the satisfied value, or null if the condition does not hold yet.
+     */
+    @SuppressWarnings("unchecked")
+    private <V> V poll(WaitState<V> state) {
+
+        state.attempt++;
+
+        if (state.doMap && (state.probe == null || !state.probe.triesBackups())) {
+            V redirected = (V) followRedirect(state);
+            if (redirected != null) {
+                satisfied(state);
+                return redirected;
+            }
+        }
+
+        try {
+            V value;
+            if (state.probe != null) {
+                Object probed = state.probe.probe((WebDriver) input);
+                if (probed == ElementProbe.MISSING) {
+                    return missed(state);
+                }
+                value = (V) probed;
+            }
+            else {
+                value = state.isTrue.apply(input);
+            }
+
+            if (holds(value)) {
+
+                if (state.rechecking != null) {
+                    // the primary locator works again
+                    Redirects.forget((WebDriver) input, state.rechecking);
+                    state.rechecking = null;
+                }
+
+                if(state.doMap && (value instanceof WebElement)){
+
+                    learn((WebElement) value, state.conditionKey);
+                }
+
+                satisfied(state);
+                return value;
+            }
+
+            // Clear the last exception; if another retry or timeout exception would
+            // be caused by a false or null value, the last exception is not the
+            // cause of the timeout.
+            state.lastException = null;
+            state.missed = false;
+        } catch (Throwable e) {
+
+            state.missed = false;
+
+            if(state.doMap){
+
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.log(Level.FINE, "Desired locator failed: " + state.conditionKey + "\nOriginal message: " + e.getMessage());
+                }
+
+                V element = (V) tryAltLocator(state);
+
+                if(element != null){
+                    satisfied(state);
+                    return element;
                 }
                 else {
-                    lastException = propagateIfNotIgnored(e);
+                    state.lastException = propagateIfNotIgnored(e);
                 }
+
+            }
+            else {
+                state.lastException = propagateIfNotIgnored(e);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Handles a miss an {@link ElementProbe} reported without throwing, as the catch in
+     * {@link #poll(WaitState)} handles a thrown one.
+     */
+    @SuppressWarnings("unchecked")
+    private <V> V missed(WaitState<V> state) {
+
+        if (state.doMap && !state.probe.triesBackups()) {
+            V element = (V) tryAltLocator(state);
+            if (element != null) {
+                satisfied(state);
+                return element;
+            }
+        }
+
+        state.lastException = null;
+        state.missed = true;
+        return null;
+    }
+
+    /**
+     * Goes straight to the backup strategy that recovered the condition's locator earlier in the
+     * run, unless it is time to evaluate the primary locator again.
+     *
+     * @return the element found, or null if there is no redirect or it found nothing.
+     */
+    private WebElement followRedirect(WaitState<?> state) {
+
+        WebDriver driver = (WebDriver) input;
+        Redirects.Redirect redirect = Redirects.find(driver, state.conditionKey);
+
+        if (redirect == null || redirect == state.rechecking) {
+            return null;
+        }
+        if (redirect.dueForRecheck()) {
+            state.rechecking = redirect;
+            return null;
+        }
+
+        long started = listener == null ? 0 : System.nanoTime();
+        Locators.Recovery recovery = Locators.follow(redirect, driver);
+
+        if (recovery.element == null) {
+            Redirects.forget(driver, redirect);
+            return null;
+        }
+
+        if (listener != null) {
+            listener.fallbackAttempted(state.conditionKey, recovery.strategy == null ? "unknown" : recovery.strategy,
+                    System.nanoTime() - started);
+        }
+
+        return recovery.element;
+    }
+
+    private void satisfied(WaitState<?> state) {
+
+        if (state.doMap) {
+            if (state.breaker != null) {
+                CircuitBreakers.close(state.breaker);
+            } else {
+                CircuitBreakers.satisfied((WebDriver) input, state.conditionKey);
             }
+        }
 
-            // Check the timeout after evaluating the function to ensure conditions
-            // with a zero timeout can succeed.
-            if (!clock.isNowBefore(end)) {
-                String message = messageSupplier != null ?
-                        messageSupplier.get() : null;
+        long elapsed = clock.now() - state.start;
+        pollingStrategy.satisfied(state.conditionKey, elapsed);
+        if (listener != null) {
+            listener.waitSatisfied(state.conditionKey, state.attempt, elapsed);
+        }
+    }
 
-                String timeoutMessage = String.format(
+    /**
+     * @return how long to sleep before the next evaluation, in milliseconds.
+     * @throws TimeoutException If the timeout has expired.
+     */
+    private long nextDelay(WaitState<?> state) {
+
+        // Check the timeout after evaluating the function to ensure conditions
+        // with a zero timeout can succeed.
+        if (!clock.isNowBefore(state.end)) {
+            String message = messageSupplier != null ?
+                    messageSupplier.get() : null;
+
+            String timeoutMessage;
+            if (state.shortCircuit != null) {
+                timeoutMessage = String.format(
+                        "Expected condition failed: %s (short-circuited after %d ms with %s interval: "
+                                + "the last %d waits for this locator timed out and backup locators could not recover it)",
+                        message == null ? "waiting for " + state.isTrue : message,
+                        clock.now() - state.start, pollingStrategy, state.shortCircuit.getFailures());
+            }
+            else {
+                timeoutMessage = String.format(
                         "Expected condition failed: %s (tried for %d second(s) with %s interval)",
-                        message == null ? "waiting for " + isTrue : message,
-                        timeout.in(SECONDS), interval);
-                throw timeoutException(timeoutMessage, lastException);
+                        message == null ? "waiting for " + state.isTrue : message,
+                        timeout.in(SECONDS), pollingStrategy);
+                // a wait that ran in full and failed to recover its locator counts towards the breaker
+                if (state.guarded && (state.lastException != null || state.missed)
+                        && CircuitBreakers.timedOut((WebDriver) input, state.conditionKey, clock.now())) {
+                    LOG.warning("BetterWait is cutting later waits for " + state.conditionKey
+                            + " short: it keeps timing out and backup locators cannot recover it");
+                }
             }
+            if (listener != null) {
+                listener.waitTimedOut(state.conditionKey, state.attempt, clock.now() - state.start);
+                if (state.shortCircuit != null) {
+                    listener.waitShortCircuited(state.conditionKey);
+                }
+            }
+            throw timeoutException(timeoutMessage, state.cause());
+        }
+
+        long now = clock.now();
+        long delay = pollingStrategy.nextDelayMillis(state.conditionKey, state.attempt, now - state.start);
+        return Math.max(Math.min(delay, state.end - now), 0);
+    }
 
-            try {
-                sleeper.sleep(interval);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new WebDriverException(e);
+    private void learn(WebElement element, String originalLocator) {
+
+        LocatorLearner learner = LocatorLearner.get();
+
+        if (learningMode == LearningMode.OFF) {
+            return;
+        }
+        if (pageLearning && learnPage(learner, originalLocator)) {
+            return;
+        }
+        LocatorKey key = LocatorKey.of(Locators.normalizeUrl(PageContext.currentUrl((WebDriver) input)), originalLocator);
+        if (!relearnPolicy.shouldLearn(key, learner)) {
+            // still in use, so compaction keeps it
+            LocatorCache.get().touch(key);
+            return;
+        }
+
+        boolean onlyIfChanged = relearnPolicy.isLearnOnlyIfChanged();
+
+        if (learningMode == LearningMode.ASYNC) {
+            learner.submit(element, originalLocator, (WebDriver) input, onlyIfChanged, listener);
+            return;
+        }
+
+        long started = listener == null ? 0 : System.nanoTime();
+
+        if (Locators.updateLocator(element, originalLocator, (WebDriver) input, onlyIfChanged)) {
+            learner.markLearned(key);
+            if (listener != null) {
+                listener.locatorLearned(originalLocator, System.nanoTime() - started);
             }
         }
     }
 
+    /**
+     * Learns the page on the first visit to its URL in this run.
+     *
+     * @return true if the locator was already learned on this page in this run, so it needs no
+     *         learning of its own.
+     */
+    private boolean learnPage(LocatorLearner learner, String originalLocator) {
+
+        WebDriver driver = (WebDriver) input;
+        // kept current by the scripts, recovery and the navigation listener; not re-read per wait
+        String current = Locators.normalizeUrl(PageContext.currentUrl(driver));
+
+        if (Locators.isPageLearned(current)) {
+            return Locators.learnedWithPage(current, originalLocator);
+        }
+
+        if (learningMode == LearningMode.ASYNC) {
+            learner.submitPage(driver, current, listener);
+            return false;
+        }
+
+        long started = listener == null ? 0 : System.nanoTime();
+        String url = Locators.updatePageLocators(driver);
+        if (url == null) {
+            return false;
+        }
+        if (listener != null) {
+            listener.locatorLearned(LocatorLearner.PAGE_PREFIX + url, System.nanoTime() - started);
+        }
+
+        // the URL the page script reported, so it is current
+        return Locators.learnedWithPage(url, originalLocator);
+    }
+
     private Throwable propagateIfNotIgnored(Throwable e) {
-        for (Class<? extends Throwable> ignoredException : ignoredExceptions) {
-            if (ignoredException.isInstance(e)) {
-                return e;
-            }
+        if (ignoredLookup.computeIfAbsent(e.getClass(), this::isIgnored)) {
+            return e;
         }
         //Throwables.throwIfUnchecked(e);
         throw new RuntimeException(e);
     }
 
+    private boolean isIgnored(Class<?> type) {
+        for (Class<? extends Throwable> ignoredException : ignoredExceptions) {
+            if (ignoredException.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Throws a timeout exception. This method may be overridden to throw an exception that is
      * idiomatic for a particular test infrastructure, such as an AssertionError in JUnit4.
@@ -264,26 +927,44 @@ public class BetterFluentWait<T> implements Wait<T> {
 
 
     public WebElement tryAltLocator(String OriginalLocator, WebDriver driver) {
+        return tryAltLocator(OriginalLocator, driver, true);
+    }
 
-        System.out.println("Getting stored locators for " + OriginalLocator);
+    /**
+     * Falls back to the condition's backup locators, reading the driver's URL at most once per wait.
+     */
+    private WebElement tryAltLocator(WaitState<?> state) {
+        WebElement element = tryAltLocator(state.conditionKey, (WebDriver) input, !state.urlChecked);
+        state.urlChecked = true;
+        return element;
+    }
 
+    private WebElement tryAltLocator(String OriginalLocator, WebDriver driver, boolean recheckUrl) {
 
-        // get the locators
-        DB db = DBMaker.fileDB("BetterWait_Locators_" + Locators.getFileSafeString(OriginalLocator) + Locators.getFileSafeString(driver.getCurrentUrl()) + ".db").make();
+        LOG.finer(() -> "Getting stored locators for " + OriginalLocator);
 
-        ConcurrentMap<String, String> map = db.hashMap(OriginalLocator, Serializer.STRING, Serializer.STRING).createOrOpen();
+        long started = listener == null ? 0 : System.nanoTime();
 
-        String backupLocators = map.get(OriginalLocator);
 
-        System.out.println("got locators for " + Locators.getFileSafeString(OriginalLocator)  + ": ");
-        System.out.println(backupLocators);
+        // get the locators
+        Locators.Recovery recovery = Locators.recover(LocatorKey.describe(OriginalLocator), driver, recheckUrl);
+        boolean found = recovery != null && recovery.element != null;
 
-        WebElement element = Locators.tryAltLocators(backupLocators, driver);
+        if (found) {
+            Locators.recordHit(recovery);
+            Redirects.remember(driver, recovery);
+        }
 
+        if (listener != null) {
+            listener.fallbackAttempted(OriginalLocator, found ? (recovery.strategy == null ? "unknown" : recovery.strategy) : null, System.nanoTime() - started);
+        }
 
-        db.close();
+        if (!found) {
+            FALLBACK_FAILURES.failure(OriginalLocator, recovery == null ? "no backup locators stored" : "backup locators found no element");
+            return null;
+        }
 
-        return element;
+        return recovery.element;
 
     }
 
@@ -362,7 +1043,7 @@ public class BetterFluentWait<T> implements Wait<T> {
 
         String retVal = (String) ((JavascriptExecutor) driver).executeScript(JS_GET_NTH_OF_TYPE_PATH + JS_GET_CONTAINS_TEXT_PATH + GENERATE_ALTERNATE_SELECTORS, element);
 
-        System.out.println(retVal);
+        LOG.fine(retVal);
 
 
 
@@ -1,10 +1,12 @@
 package com.sm1;
 
 
+import org.openqa.selenium.By;
 import org.openqa.selenium.NotFoundException;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
 import org.openqa.selenium.remote.RemoteWebDriver;
 
 import java.util.concurrent.TimeUnit;
@@ -13,6 +15,8 @@ import java.util.concurrent.TimeUnit;
 
 import org.openqa.selenium.support.ui.*;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 
 
 
@@ -22,6 +26,8 @@ import org.openqa.selenium.support.ui.*;
 public class BetterWebDriverWait extends BetterFluentWait<WebDriver> {
     public final static long DEFAULT_SLEEP_TIMEOUT = 500;
     private final WebDriver driver;
+    private WaitMode waitMode = WaitMode.POLL;
+    private long scriptTimeoutMillis = ObservedElementLocated.DEFAULT_SCRIPT_TIMEOUT_MILLIS;
 
     /**
      * Wait will ignore instances of NotFoundException that are encountered (thrown) by default in
@@ -66,6 +72,62 @@ public class BetterWebDriverWait extends BetterFluentWait<WebDriver> {
         this.driver = driver;
     }
 
+    /**
+     * Sets how {@link #untilPresent(By)} and {@link #untilVisible(By)} wait. The default is
+     * {@link WaitMode#POLL}.
+     *
+     * @param mode The wait mode.
+     * @return A self reference.
+     */
+    public BetterWebDriverWait withWaitMode(WaitMode mode) {
+        this.waitMode = checkNotNull(mode);
+        return this;
+    }
+
+    /**
+     * Tells {@link WaitMode#OBSERVE} waits the session's script timeout, if it was set to something
+     * other than the W3C default of 30 seconds, so each in-page wait ends before the session cuts
+     * it off. The session itself is not changed.
+     *
+     * @param duration The script timeout set on the session.
+     * @param unit The unit of time.
+     * @return A self reference.
+     */
+    public BetterWebDriverWait withScriptTimeout(long duration, TimeUnit unit) {
+        this.scriptTimeoutMillis = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * Waits until an element matching the locator is present in the DOM.
+     *
+     * @param by The locator.
+     * @return the element.
+     * @throws TimeoutException If the timeout expires.
+     */
+    public WebElement untilPresent(By by) {
+        ByQuery query = waitMode == WaitMode.OBSERVE ? ByQuery.of(by) : null;
+        if (query == null) {
+            return until(new ProbedElementLocated(by, false));
+        }
+        return until(new ObservedElementLocated(by, query, false, getClock(), getTimeoutMillis(), scriptTimeoutMillis));
+    }
+
+    /**
+     * Waits until an element matching the locator is present in the DOM and visible.
+     *
+     * @param by The locator.
+     * @return the element.
+     * @throws TimeoutException If the timeout expires.
+     */
+    public WebElement untilVisible(By by) {
+        ByQuery query = waitMode == WaitMode.OBSERVE ? ByQuery.of(by) : null;
+        if (query == null) {
+            return until(new ProbedElementLocated(by, true));
+        }
+        return until(new ObservedElementLocated(by, query, true, getClock(), getTimeoutMillis(), scriptTimeoutMillis));
+    }
+
     @Override
     protected RuntimeException timeoutException(String message, Throwable lastException) {
         TimeoutException ex = new TimeoutException(message, lastException);
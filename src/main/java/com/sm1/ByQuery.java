@@ -0,0 +1,75 @@
+package com.sm1;
+
+import org.openqa.selenium.By;
+
+/**
+ * A {@link By} translated into a selector the page can evaluate itself, so scripts can look up
+ * elements without a findElement round-trip.
+ */
+final class ByQuery {
+
+    static final String CSS = "css";
+    static final String XPATH = "xpath";
+
+    final String kind;
+    final String selector;
+
+    private ByQuery(String kind, String selector) {
+        this.kind = kind;
+        this.selector = selector;
+    }
+
+    /**
+     * @param by The locator to translate.
+     * @return the equivalent query, or null if the locator type has no in-page equivalent.
+     */
+    static ByQuery of(By by) {
+
+        String description = by.toString();
+        int separator = description.indexOf(": ");
+        if (separator < 0) {
+            return null;
+        }
+        String value = description.substring(separator + 2);
+
+        if (by instanceof By.ByCssSelector) {
+            return new ByQuery(CSS, value);
+        }
+        if (by instanceof By.ByXPath) {
+            return new ByQuery(XPATH, value);
+        }
+        if (by instanceof By.ById) {
+            return new ByQuery(CSS, "[id=" + cssString(value) + "]");
+        }
+        if (by instanceof By.ByName) {
+            return new ByQuery(CSS, "[name=" + cssString(value) + "]");
+        }
+        if (by instanceof By.ByClassName) {
+            return new ByQuery(CSS, "[class~=" + cssString(value) + "]");
+        }
+        if (by instanceof By.ByTagName) {
+            return new ByQuery(CSS, value);
+        }
+        if (by instanceof By.ByLinkText) {
+            return new ByQuery(XPATH, "//a[normalize-space(.)=" + xpathString(value.trim()) + "]");
+        }
+        if (by instanceof By.ByPartialLinkText) {
+            return new ByQuery(XPATH, "//a[contains(., " + xpathString(value) + ")]");
+        }
+        return null;
+    }
+
+    static String cssString(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    static String xpathString(String value) {
+        if (value.indexOf('"') < 0) {
+            return '"' + value + '"';
+        }
+        if (value.indexOf('\'') < 0) {
+            return "'" + value + "'";
+        }
+        return "concat(\"" + value.replace("\"", "\", '\"', \"") + "\")";
+    }
+}
@@ -0,0 +1,176 @@
+package com.sm1;
+
+import com.google.common.cache.CacheBuilder;
+import org.openqa.selenium.WebDriver;
+
+import java.util.Map;
+
+/**
+ * Remembers locators whose waits keep timing out with backup locator recovery failing, so a
+ * broken locator with no usable backups stops costing the full timeout on every wait.
+ *
+ * <p>
+ * After {@code betterwait.breaker.threshold} such timeouts in a row (3 by default), each within
+ * {@code betterwait.breaker.windowMillis} of the first (10 minutes), the locator's breaker opens:
+ * later waits for it on that page give up after {@code betterwait.breaker.probeMillis} (2 seconds)
+ * or their own timeout, whichever is shorter. Once {@code betterwait.breaker.retryAfterMillis}
+ * (1 minute) has passed, one wait is let through with its full timeout; if it times out too, the
+ * breaker stays open for another period. Any wait that finds the element closes the breaker.
+ * Setting the threshold to 0 turns breakers off.
+ *
+ * <p>
+ * A breaker is only opened or applied for the page the driver is confirmed to be on, since the
+ * remembered URL can be stale after a navigation. Breakers are shared by every driver, live for
+ * the run only and are bounded by {@code betterwait.breaker.maxEntries} (1000). Times come from
+ * the waits' clocks.
+ */
+final class CircuitBreakers {
+
+    static final String THRESHOLD_PROPERTY = "betterwait.breaker.threshold";
+    static final String WINDOW_PROPERTY = "betterwait.breaker.windowMillis";
+    static final String PROBE_PROPERTY = "betterwait.breaker.probeMillis";
+    static final String RETRY_PROPERTY = "betterwait.breaker.retryAfterMillis";
+    static final String MAX_ENTRIES_PROPERTY = "betterwait.breaker.maxEntries";
+
+    private static final int THRESHOLD = Integer.getInteger(THRESHOLD_PROPERTY, 3);
+    private static final long WINDOW_MILLIS = Long.getLong(WINDOW_PROPERTY, 600000L);
+    private static final long PROBE_MILLIS = Long.getLong(PROBE_PROPERTY, 2000L);
+    private static final long RETRY_AFTER_MILLIS = Long.getLong(RETRY_PROPERTY, 60000L);
+
+    private static final Map<LocatorKey, Breaker> BREAKERS = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(MAX_ENTRIES_PROPERTY, 1000))
+            .<LocatorKey, Breaker>build()
+            .asMap();
+
+    /**
+     * The recent timeouts of one locator on one page.
+     */
+    static final class Breaker {
+
+        final LocatorKey key;
+        private int failures;
+        private long firstFailureAt;
+        private boolean open;
+        private long openedAt;
+
+        Breaker(LocatorKey key) {
+            this.key = key;
+        }
+
+        synchronized boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * @return true if the wait may run for its full timeout, as the half-open retry.
+         */
+        synchronized boolean tryRetry(long now) {
+            if (now - openedAt < RETRY_AFTER_MILLIS) {
+                return false;
+            }
+            // a retry that never reports back holds the breaker open for one more period
+            openedAt = now;
+            return true;
+        }
+
+        /**
+         * @return true if this timeout opened the breaker.
+         */
+        synchronized boolean failed(long now) {
+            if (open) {
+                openedAt = now;
+                return false;
+            }
+            if (failures == 0 || now - firstFailureAt > WINDOW_MILLIS) {
+                failures = 0;
+                firstFailureAt = now;
+            }
+            if (++failures < THRESHOLD) {
+                return false;
+            }
+            open = true;
+            openedAt = now;
+            return true;
+        }
+
+        synchronized int getFailures() {
+            return failures;
+        }
+    }
+
+    private CircuitBreakers() {
+    }
+
+    /**
+     * @return how long a wait for a locator whose breaker is open may run, in milliseconds.
+     */
+    static long probeMillis() {
+        return PROBE_MILLIS;
+    }
+
+    /**
+     * Finds the open breaker for a locator on the driver's page. The remembered URL is only used
+     * to rule breakers out; one that would apply is confirmed against the driver's current URL.
+     *
+     * @param description The locator description, as built by {@link LocatorKey#describe(Object)}.
+     * @return the open breaker, or null if there is none.
+     */
+    static Breaker find(WebDriver driver, String description) {
+
+        if (THRESHOLD <= 0 || BREAKERS.isEmpty()) {
+            return null;
+        }
+
+        String cached = PageContext.cachedUrl(driver);
+        if (cached != null) {
+            Breaker breaker = BREAKERS.get(LocatorKey.of(Locators.normalizeUrl(cached), description));
+            if (breaker == null || !breaker.isOpen()) {
+                return null;
+            }
+        }
+
+        Breaker breaker = BREAKERS.get(confirmedKey(driver, description));
+        return breaker != null && breaker.isOpen() ? breaker : null;
+    }
+
+    /**
+     * Counts a wait that timed out on the locator after recovery failed.
+     *
+     * @param now The wait's clock time.
+     * @return true if this timeout opened the locator's breaker.
+     */
+    static boolean timedOut(WebDriver driver, String description, long now) {
+
+        if (THRESHOLD <= 0) {
+            return false;
+        }
+
+        return BREAKERS.computeIfAbsent(confirmedKey(driver, description), Breaker::new).failed(now);
+    }
+
+    /**
+     * Closes the locator's breaker on the driver's remembered page, if it has one.
+     */
+    static void satisfied(WebDriver driver, String description) {
+
+        if (BREAKERS.isEmpty()) {
+            return;
+        }
+
+        String url = PageContext.cachedUrl(driver);
+        if (url != null) {
+            BREAKERS.remove(LocatorKey.of(Locators.normalizeUrl(url), description));
+        }
+    }
+
+    /**
+     * Closes a breaker a wait found the element past.
+     */
+    static void close(Breaker breaker) {
+        BREAKERS.remove(breaker.key, breaker);
+    }
+
+    private static LocatorKey confirmedKey(WebDriver driver, String description) {
+        return LocatorKey.of(Locators.normalizeUrl(PageContext.fetchUrl(driver)), description);
+    }
+}
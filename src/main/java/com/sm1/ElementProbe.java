@@ -0,0 +1,37 @@
+package com.sm1;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ * An element condition that can report a missing element without throwing. Waits call
+ * {@link #probe(WebDriver)} in place of {@code apply}, so a miss costs no exception: backup
+ * locator recovery still runs on it, and the exception is only built if the wait times out.
+ */
+interface ElementProbe {
+
+    /**
+     * Returned by {@link #probe(WebDriver)} when no element matches.
+     */
+    Object MISSING = new Object();
+
+    /**
+     * Evaluates the condition once.
+     *
+     * @return the element, {@link #MISSING} if no element matches, or null if one matches but the
+     *         condition does not hold yet.
+     */
+    Object probe(WebDriver driver);
+
+    /**
+     * @return true if the probe already tried the locator's stored backup locators, so the wait
+     *         should neither recover a miss nor follow a redirect on its own.
+     */
+    default boolean triesBackups() {
+        return false;
+    }
+
+    /**
+     * @return the exception {@code apply} throws for a miss.
+     */
+    RuntimeException missing();
+}
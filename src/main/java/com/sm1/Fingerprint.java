@@ -0,0 +1,357 @@
+package com.sm1;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The backup locators learned for one element: each strategy's selector, how much it is trusted,
+ * when it was first learned and how often it has recovered the element.
+ *
+ * <p>
+ * Fingerprints are immutable. They are stored in binary form by {@link FingerprintSerializer} and
+ * handed to the in-page scripts as plain lists, so neither side parses JSON.
+ */
+public final class Fingerprint {
+
+    public static final String CSS = "css";
+    public static final String XPATH = "xpath";
+
+    /**
+     * The strategy types generated by {@code locators.js}. They are stored as one-byte codes, in
+     * this order, and never reordered; new types go at the end.
+     */
+    static final List<String> KNOWN_TYPES = Collections.unmodifiableList(Arrays.asList(
+            "id", "name", "data", "text", "tag-path", "anchored"));
+
+    private static final Comparator<Strategy> BY_RANK = Comparator
+            .comparingDouble((Strategy s) -> s.confidence).reversed()
+            .thenComparing(Comparator.comparingInt((Strategy s) -> s.hits).reversed());
+
+    private final long learnedAt;
+    private final List<Strategy> strategies;
+    private final boolean partial;
+    private final int weight;
+
+    /**
+     * One way of finding the element again.
+     */
+    public static final class Strategy {
+
+        private final String type;
+        private final String kind;
+        private final String selector;
+        private final float confidence;
+        private final long learnedAt;
+        private final int hits;
+
+        Strategy(String type, String kind, String selector, float confidence, long learnedAt, int hits) {
+            this.type = internType(type);
+            this.kind = XPATH.equals(kind) ? XPATH : CSS;
+            this.selector = selector;
+            this.confidence = confidence;
+            this.learnedAt = learnedAt;
+            this.hits = hits;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return {@link #CSS} or {@link #XPATH}.
+         */
+        public String getKind() {
+            return kind;
+        }
+
+        public String getSelector() {
+            return selector;
+        }
+
+        /**
+         * @return how much the strategy was trusted when learned, from 0.0 to 1.0.
+         */
+        public float getConfidence() {
+            return confidence;
+        }
+
+        /**
+         * @return when this selector was first learned, in epoch milliseconds.
+         */
+        public long getLearnedAt() {
+            return learnedAt;
+        }
+
+        /**
+         * @return how many times this strategy weighed most in recovering the element.
+         */
+        public int getHits() {
+            return hits;
+        }
+
+        boolean sameSelector(Strategy other) {
+            return type.equals(other.type) && kind.equals(other.kind) && selector.equals(other.selector);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Strategy)) {
+                return false;
+            }
+            Strategy other = (Strategy) o;
+            return sameSelector(other) && confidence == other.confidence
+                    && learnedAt == other.learnedAt && hits == other.hits;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, kind, selector, confidence, learnedAt, hits);
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + kind + " " + selector + " (" + confidence + ", " + hits + " hits)";
+        }
+    }
+
+    Fingerprint(long learnedAt, List<Strategy> strategies) {
+        this(learnedAt, strategies, false);
+    }
+
+    Fingerprint(long learnedAt, List<Strategy> strategies, boolean partial) {
+        this.learnedAt = learnedAt;
+        this.strategies = Collections.unmodifiableList(new ArrayList<>(strategies));
+        this.partial = partial;
+
+        int chars = 0;
+        for (Strategy strategy : strategies) {
+            chars += strategy.selector.length();
+        }
+        this.weight = chars;
+    }
+
+    /**
+     * @param result What {@code generateLocators} returned: {@code {strategies, partial}}, or just
+     *        the list of {@code [type, kind, selector, score]} entries.
+     * @param now The time the locators were generated.
+     * @return the fingerprint, or null if the result is neither.
+     */
+    static Fingerprint fromScript(Object result, long now) {
+        boolean partial = false;
+        if (result instanceof Map) {
+            partial = Boolean.TRUE.equals(((Map<?, ?>) result).get("partial"));
+            result = ((Map<?, ?>) result).get("strategies");
+        }
+        if (!(result instanceof List)) {
+            return null;
+        }
+
+        List<Strategy> strategies = new ArrayList<>();
+        for (Object entry : (List<?>) result) {
+            if (entry instanceof List && ((List<?>) entry).size() >= 4) {
+                List<?> fields = (List<?>) entry;
+                strategies.add(new Strategy(String.valueOf(fields.get(0)), String.valueOf(fields.get(1)),
+                        String.valueOf(fields.get(2)), ((Number) fields.get(3)).floatValue(), now, 0));
+            }
+        }
+        return new Fingerprint(now, strategies, partial);
+    }
+
+    /**
+     * Reads backup locators in the JSON form earlier versions stored, either
+     * {@code {"strategies": [...]}} or the original {@code {"nth-of-type": path}}.
+     *
+     * @param json The JSON text.
+     * @param learnedAt The time to record the strategies as learned.
+     * @return the fingerprint.
+     */
+    public static Fingerprint fromJson(String json, long learnedAt) {
+        JsonObject parsed = new JsonParser().parse(json).getAsJsonObject();
+        List<Strategy> strategies = new ArrayList<>();
+
+        JsonElement list = parsed.get("strategies");
+        if (list != null && list.isJsonArray()) {
+            for (JsonElement element : (JsonArray) list) {
+                JsonObject strategy = element.getAsJsonObject();
+                strategies.add(new Strategy(strategy.get("type").getAsString(), strategy.get("kind").getAsString(),
+                        strategy.get("selector").getAsString(), strategy.get("score").getAsFloat(), learnedAt, 0));
+            }
+        } else if (parsed.has("nth-of-type")) {
+            strategies.add(new Strategy("tag-path", CSS, parsed.get("nth-of-type").getAsString(), 0.4f, learnedAt, 0));
+        }
+        return new Fingerprint(learnedAt, strategies);
+    }
+
+    /**
+     * @return when the element was last learned, in epoch milliseconds.
+     */
+    public long getLearnedAt() {
+        return learnedAt;
+    }
+
+    /**
+     * @return true if the generator ran out of its budget before trying every strategy.
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * @return the strategies in the order they were generated.
+     */
+    public List<Strategy> getStrategies() {
+        return strategies;
+    }
+
+    /**
+     * @return the strategies from most to least trusted, most-used first among equals.
+     */
+    public List<Strategy> ranked() {
+        List<Strategy> ranked = new ArrayList<>(strategies);
+        ranked.sort(BY_RANK);
+        return ranked;
+    }
+
+    /**
+     * @return true if both fingerprints hold the same selectors in the same order, regardless of
+     *         timestamps and hit counts.
+     */
+    public boolean sameStrategies(Fingerprint other) {
+        if (other == null || other.strategies.size() != strategies.size()) {
+            return false;
+        }
+        for (int i = 0; i < strategies.size(); i++) {
+            if (!strategies.get(i).sameSelector(other.strategies.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param previous The fingerprint this one replaces, or null.
+     * @return a copy of this fingerprint that keeps the earlier first-learned time and the higher
+     *         hit count of every selector that was already in {@code previous}.
+     */
+    Fingerprint withHistoryFrom(Fingerprint previous) {
+        if (previous == null || previous.strategies.isEmpty()) {
+            return this;
+        }
+
+        List<Strategy> merged = new ArrayList<>(strategies.size());
+        for (Strategy strategy : strategies) {
+            Strategy kept = strategy;
+            for (Strategy old : previous.strategies) {
+                if (strategy.sameSelector(old)) {
+                    kept = new Strategy(strategy.type, strategy.kind, strategy.selector, strategy.confidence,
+                            Math.min(strategy.learnedAt, old.learnedAt), Math.max(strategy.hits, old.hits));
+                    break;
+                }
+            }
+            merged.add(kept);
+        }
+        return new Fingerprint(learnedAt, merged, partial);
+    }
+
+    /**
+     * Fills in a partial fingerprint from the one it replaces: strategies of a type the budget left
+     * out are carried over.
+     *
+     * @param previous The fingerprint this one replaces, or null.
+     * @return the combined fingerprint, partial only if {@code previous} was too.
+     */
+    Fingerprint withMissingFrom(Fingerprint previous) {
+        if (!partial || previous == null) {
+            return this;
+        }
+
+        List<Strategy> combined = new ArrayList<>(strategies);
+        for (Strategy old : previous.strategies) {
+            boolean covered = false;
+            for (Strategy strategy : strategies) {
+                if (strategy.type.equals(old.type)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                combined.add(old);
+            }
+        }
+        return new Fingerprint(learnedAt, combined, previous.partial);
+    }
+
+    /**
+     * @param index The position of the strategy that recovered the element.
+     * @return a copy of this fingerprint with that strategy's hit count incremented.
+     */
+    Fingerprint withHit(int index) {
+        List<Strategy> updated = new ArrayList<>(strategies);
+        Strategy hit = updated.get(index);
+        updated.set(index, new Strategy(hit.type, hit.kind, hit.selector, hit.confidence, hit.learnedAt,
+                hit.hits == Integer.MAX_VALUE ? hit.hits : hit.hits + 1));
+        return new Fingerprint(learnedAt, updated, partial);
+    }
+
+    /**
+     * @return the strategies as {@code [type, kind, selector, score]} lists, the argument
+     *         {@code tryLocators} expects.
+     */
+    List<List<Object>> toScriptArgument() {
+        List<List<Object>> argument = new ArrayList<>(strategies.size());
+        for (Strategy strategy : strategies) {
+            argument.add(Arrays.asList(strategy.type, strategy.kind, strategy.selector, (double) strategy.confidence));
+        }
+        return argument;
+    }
+
+    /**
+     * @return the total length of the selectors, used to bound the in-memory cache.
+     */
+    int weight() {
+        return weight;
+    }
+
+    /**
+     * @return the shared instance of a known strategy type, or the type itself.
+     */
+    static String internType(String type) {
+        int code = KNOWN_TYPES.indexOf(type);
+        return code < 0 ? type : KNOWN_TYPES.get(code);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Fingerprint)) {
+            return false;
+        }
+        Fingerprint other = (Fingerprint) o;
+        return learnedAt == other.learnedAt && partial == other.partial && strategies.equals(other.strategies);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(learnedAt) + strategies.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return partial ? strategies + " (partial)" : strategies.toString();
+    }
+}
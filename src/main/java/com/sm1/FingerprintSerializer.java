@@ -0,0 +1,99 @@
+package com.sm1;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.serializer.GroupSerializerObjectArray;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores a {@link Fingerprint} in a compact binary form.
+ *
+ * <p>
+ * Each record starts with a format version byte and a flags byte whose lowest bit marks a partial
+ * fingerprint. Known strategy types are written as their index in {@link Fingerprint#KNOWN_TYPES}
+ * and any other type as {@link #OTHER_TYPE} followed by its name. Strings are written as a packed
+ * byte length followed by their UTF-8 bytes, so selectors of any length fit. Timestamps and counts
+ * are variable-length packed. Records written by any other format are rejected rather than misread.
+ */
+final class FingerprintSerializer extends GroupSerializerObjectArray<Fingerprint> {
+
+    static final FingerprintSerializer INSTANCE = new FingerprintSerializer();
+
+    static final int FORMAT_VERSION = 1;
+
+    private static final int OTHER_TYPE = 0xFF;
+    private static final int PARTIAL = 1;
+
+    private FingerprintSerializer() {
+    }
+
+    @Override
+    public void serialize(DataOutput2 out, Fingerprint fingerprint) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(fingerprint.isPartial() ? PARTIAL : 0);
+        out.packLong(fingerprint.getLearnedAt());
+
+        List<Fingerprint.Strategy> strategies = fingerprint.getStrategies();
+        out.packInt(strategies.size());
+        for (Fingerprint.Strategy strategy : strategies) {
+            int code = Fingerprint.KNOWN_TYPES.indexOf(strategy.getType());
+            if (code < 0) {
+                out.writeByte(OTHER_TYPE);
+                writeString(out, strategy.getType());
+            } else {
+                out.writeByte(code);
+            }
+            out.writeBoolean(Fingerprint.XPATH.equals(strategy.getKind()));
+            writeString(out, strategy.getSelector());
+            out.writeFloat(strategy.getConfidence());
+            out.packLong(strategy.getLearnedAt());
+            out.packInt(strategy.getHits());
+        }
+    }
+
+    @Override
+    public Fingerprint deserialize(DataInput2 in, int available) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported fingerprint format version " + version);
+        }
+        int flags = in.readUnsignedByte();
+
+        long learnedAt = in.unpackLong();
+
+        int count = in.unpackInt();
+        List<Fingerprint.Strategy> strategies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int code = in.readUnsignedByte();
+            String type = code == OTHER_TYPE ? readString(in) : Fingerprint.KNOWN_TYPES.get(code);
+            String kind = in.readBoolean() ? Fingerprint.XPATH : Fingerprint.CSS;
+            String selector = readString(in);
+            float confidence = in.readFloat();
+            long strategyLearnedAt = in.unpackLong();
+            int hits = in.unpackInt();
+            strategies.add(new Fingerprint.Strategy(type, kind, selector, confidence, strategyLearnedAt, hits));
+        }
+        return new Fingerprint(learnedAt, strategies, (flags & PARTIAL) != 0);
+    }
+
+    private static void writeString(DataOutput2 out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.packInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput2 in) throws IOException {
+        byte[] bytes = new byte[in.unpackInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean isTrusted() {
+        return true;
+    }
+}
@@ -0,0 +1,67 @@
+package com.sm1;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram with power-of-two buckets. Recording is one array increment, and
+ * percentiles are accurate to within a factor of two, which is enough to see where wait time goes.
+ */
+final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    void record(long value) {
+        long v = Math.max(value, 0);
+        counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(v));
+        count.increment();
+        sum.add(v);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the given percentile, or 0 if empty.
+     */
+    long percentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long n = count();
+        summary.put("count", n);
+        summary.put("mean", n == 0 ? 0 : sum.sum() / n);
+        summary.put("p50", percentile(50));
+        summary.put("p90", percentile(90));
+        summary.put("p99", percentile(99));
+        summary.put("max", percentile(100));
+        return summary;
+    }
+}
@@ -0,0 +1,26 @@
+package com.sm1;
+
+/**
+ * How a successful wait records backup locators for the element it returned.
+ */
+public enum LearningMode {
+
+    /**
+     * Generate and store backup locators before {@code until} returns.
+     */
+    SYNC,
+
+    /**
+     * Return the element right away and queue it with the {@link LocatorLearner}. The backup
+     * locators are generated and stored later, on the thread that waits on the driver: when a wait
+     * on the same driver starts or sleeps between polls, or when
+     * {@link LocatorLearner#drain(org.openqa.selenium.WebDriver)} is called. If the element has
+     * gone stale by then, that learn is skipped.
+     */
+    ASYNC,
+
+    /**
+     * Do not learn. Stored backup locators are still used for recovery.
+     */
+    OFF
+}
@@ -0,0 +1,258 @@
+package com.sm1;
+
+import com.google.common.primitives.Longs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A bounded in-memory cache of backup locators in front of the {@link LocatorStore}.
+ *
+ * <p>
+ * The cache is split into segments, each an access-ordered LRU map under its own lock, bounded by
+ * entry count and by total selector characters. Keys with no stored backups are cached as negative entries,
+ * so repeated failures of the same locator do not reach the store. Writes are write-behind: they
+ * land in the cache and a dirty map at once, and are copied into the store just before each of its
+ * batched commits. Bounds are read from the {@code betterwait.cache.maxEntries} and
+ * {@code betterwait.cache.maxChars} system properties.
+ *
+ * <p>
+ * A miss is looked up in the {@link LocatorSnapshot} before the store, unless the key was learned
+ * again in this run.
+ *
+ * <p>
+ * When the store closes, the ids resident in the cache are saved as the run's hot keys. With
+ * {@code betterwait.cache.warmStart} set to {@code true}, the next run loads them back on a
+ * background thread, so the first waits do not each pay for a store read.
+ */
+final class LocatorCache {
+
+    static final String MAX_ENTRIES_PROPERTY = "betterwait.cache.maxEntries";
+    static final String MAX_CHARS_PROPERTY = "betterwait.cache.maxChars";
+    static final String WARM_START_PROPERTY = "betterwait.cache.warmStart";
+
+    private static final Logger LOG = Logger.getLogger(LocatorCache.class.getName());
+
+    private static final int SEGMENTS = 16;
+
+    // stands in for "nothing stored" so a miss can be cached
+    private static final Fingerprint ABSENT = new Fingerprint(0, Collections.emptyList());
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Map<LocatorKey, Fingerprint> dirty = new ConcurrentHashMap<>();
+    // ids written in this run, which the store holds fresher than the snapshot
+    private final Set<Long> written = ConcurrentHashMap.newKeySet();
+    private final LocatorStore store;
+    private final LocatorSnapshot snapshot;
+
+    private static class Holder {
+        static final LocatorCache INSTANCE = create();
+
+        private static LocatorCache create() {
+            LocatorCache cache = new LocatorCache(LocatorStore.get(), LocatorSnapshot.get(),
+                    Integer.getInteger(MAX_ENTRIES_PROPERTY, 10000),
+                    Long.getLong(MAX_CHARS_PROPERTY, 20000000L));
+            if (Boolean.getBoolean(WARM_START_PROPERTY)) {
+                cache.warmStart();
+            }
+            return cache;
+        }
+    }
+
+    private static final class Segment {
+
+        private final LinkedHashMap<Long, Fingerprint> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private final int maxEntries;
+        private final long maxChars;
+        private long chars;
+        // counts put() calls, so a load can tell whether a write raced it
+        private long writes;
+
+        Segment(int maxEntries, long maxChars) {
+            this.maxEntries = maxEntries;
+            this.maxChars = maxChars;
+        }
+
+        synchronized Fingerprint get(long id) {
+            return entries.get(id);
+        }
+
+        synchronized long writes() {
+            return writes;
+        }
+
+        /**
+         * Caches a value read from the store or snapshot, unless the key is already cached or
+         * anything was written to the segment since the read began.
+         */
+        synchronized void putLoaded(long id, Fingerprint value, long writesSeen) {
+            if (writes == writesSeen && !entries.containsKey(id)) {
+                insert(id, value);
+            }
+        }
+
+        synchronized void collectIds(List<Long> ids) {
+            for (Map.Entry<Long, Fingerprint> entry : entries.entrySet()) {
+                if (entry.getValue() != ABSENT) {
+                    ids.add(entry.getKey());
+                }
+            }
+        }
+
+        synchronized void put(long id, Fingerprint value) {
+            writes++;
+            insert(id, value);
+        }
+
+        private void insert(long id, Fingerprint value) {
+            Fingerprint previous = entries.put(id, value);
+            if (previous != null) {
+                chars -= previous.weight();
+            }
+            chars += value.weight();
+
+            Iterator<Fingerprint> eldest = entries.values().iterator();
+            while ((entries.size() > maxEntries || chars > maxChars) && eldest.hasNext()) {
+                chars -= eldest.next().weight();
+                eldest.remove();
+            }
+        }
+    }
+
+    static LocatorCache get() {
+        return Holder.INSTANCE;
+    }
+
+    LocatorCache(LocatorStore store, LocatorSnapshot snapshot, int maxEntries, long maxChars) {
+        this.store = store;
+        this.snapshot = snapshot;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxEntries / SEGMENTS), Math.max(1, maxChars / SEGMENTS));
+        }
+        store.beforeCommit(this::flush);
+        store.beforeClose(this::saveHotKeys);
+    }
+
+    /**
+     * @return the fingerprint for the key, or null if none is stored.
+     */
+    Fingerprint get(LocatorKey key) {
+        long id = key.getId();
+        Segment segment = segment(id);
+        store.touch(id);
+
+        Fingerprint cached = segment.get(id);
+        if (cached != null) {
+            return cached == ABSENT ? null : cached;
+        }
+
+        // put() writes the dirty map first, so a write this misses in both places comes after
+        // this point and is seen by putLoaded
+        long writesSeen = segment.writes();
+        cached = dirty.get(key);
+        if (cached == null) {
+            Fingerprint stored = written.contains(id) ? null : snapshot.get(id);
+            if (stored == null) {
+                stored = store.get(key);
+            }
+            cached = stored == null ? ABSENT : stored;
+            segment.putLoaded(id, cached, writesSeen);
+        }
+        return cached == ABSENT ? null : cached;
+    }
+
+    /**
+     * Records that the key was used in this run without looking it up.
+     */
+    void touch(LocatorKey key) {
+        store.touch(key.getId());
+    }
+
+    /**
+     * @return the fingerprint for the key if it is in memory, without reading the store.
+     */
+    Fingerprint getIfCached(LocatorKey key) {
+        long id = key.getId();
+        Fingerprint cached = segment(id).get(id);
+        if (cached == null) {
+            cached = dirty.get(key);
+        }
+        return cached == ABSENT ? null : cached;
+    }
+
+    /**
+     * @return true if a fingerprint was written for the key in this run.
+     */
+    boolean isWritten(LocatorKey key) {
+        return written.contains(key.getId());
+    }
+
+    void put(LocatorKey key, Fingerprint fingerprint) {
+        long id = key.getId();
+        dirty.put(key, fingerprint);
+        written.add(id);
+        segment(id).put(id, fingerprint);
+    }
+
+    /**
+     * Copies pending writes into the store. Runs before every store commit.
+     */
+    void flush() {
+        for (Iterator<Map.Entry<LocatorKey, Fingerprint>> it = dirty.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<LocatorKey, Fingerprint> entry = it.next();
+            store.put(entry.getKey(), entry.getValue());
+            // a newer write for the same key stays dirty for the next flush
+            dirty.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Loads the previous run's hot keys on a background thread. Entries already cached or written
+     * by the time the loader reaches them are left alone.
+     */
+    void warmStart() {
+        Thread loader = new Thread(() -> {
+            long started = System.nanoTime();
+            int loaded = 0;
+            for (long id : store.getHotKeys()) {
+                Segment segment = segment(id);
+                long writesSeen = segment.writes();
+                if (segment.get(id) == null) {
+                    Fingerprint stored = store.get(id);
+                    if (stored != null) {
+                        segment.putLoaded(id, stored, writesSeen);
+                        loaded++;
+                    }
+                }
+            }
+            int count = loaded;
+            LOG.fine(() -> "warm start loaded " + count + " fingerprints in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+        }, "BetterWait-warm-start");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Saves the ids resident in the cache as the hot keys for the next run's warm start.
+     */
+    void saveHotKeys() {
+        List<Long> ids = new ArrayList<>();
+        for (Segment segment : segments) {
+            segment.collectIds(ids);
+        }
+        store.putHotKeys(Longs.toArray(ids));
+    }
+
+    private Segment segment(long id) {
+        return segments[(int) (id ^ (id >>> 32)) & (SEGMENTS - 1)];
+    }
+}
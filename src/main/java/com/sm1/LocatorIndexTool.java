@@ -0,0 +1,410 @@
+package com.sm1;
+
+import com.google.common.primitives.Longs;
+import org.mapdb.Atomic;
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+
+import java.io.IOException;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline maintenance for the locator store. Run it while no tests are using the store:
+ *
+ * <pre>
+ * java -cp VE-3.jar com.sm1.LocatorIndexTool stats [file]
+ * java -cp VE-3.jar com.sm1.LocatorIndexTool compact [file] [maxAgeDays]
+ * java -cp VE-3.jar com.sm1.LocatorIndexTool merge [file] [shard...]
+ * java -cp VE-3.jar com.sm1.LocatorIndexTool export [file] [snapshot] [maxAgeDays]
+ * </pre>
+ *
+ * <p>
+ * {@code compact} rewrites the store into a new file and replaces the old one. It drops fingerprints
+ * neither learned nor used by a wait within {@code maxAgeDays}, if given. It also re-normalizes each
+ * entry's URL with the rules the store was written with, so entries stored under URL variants that
+ * now normalize alike are merged, keeping the most recently learned fingerprint and the hit counts
+ * of the selectors it shares with the others.
+ *
+ * <p>
+ * {@code merge} folds the shards written by parallel forks into the store and deletes them. Without
+ * shard arguments it merges every {@code <file>.shard-*.db} next to the store. The file defaults to
+ * the {@code betterwait.store} property or {@link LocatorStore#DEFAULT_STORE_FILE}.
+ *
+ * <p>
+ * {@code export} writes the store's fingerprints as a {@link LocatorSnapshot}, by default
+ * {@link LocatorSnapshot#DEFAULT_RESOURCE} in the working directory. Put the file on the test
+ * classpath, for example in {@code src/test/resources}, to ship it with the tests.
+ */
+public final class LocatorIndexTool {
+
+    private LocatorIndexTool() {
+    }
+
+    /**
+     * What a compaction, merge or export did.
+     */
+    public static final class Result {
+
+        private final long kept;
+        private final long expired;
+        private final long merged;
+
+        Result(long kept, long expired, long merged) {
+            this.kept = kept;
+            this.expired = expired;
+            this.merged = merged;
+        }
+
+        public long getKept() {
+            return kept;
+        }
+
+        public long getExpired() {
+            return expired;
+        }
+
+        public long getMerged() {
+            return merged;
+        }
+
+        @Override
+        public String toString() {
+            return "kept " + kept + ", expired " + expired + ", merged " + merged;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || !("stats".equals(args[0]) || "compact".equals(args[0]) || "merge".equals(args[0])
+                || "export".equals(args[0]))) {
+            System.err.println("usage: LocatorIndexTool stats [file]");
+            System.err.println("       LocatorIndexTool compact [file] [maxAgeDays]");
+            System.err.println("       LocatorIndexTool merge [file] [shard...]");
+            System.err.println("       LocatorIndexTool export [file] [snapshot] [maxAgeDays]");
+            System.exit(2);
+        }
+
+        Path file = Paths.get(args.length > 1 ? args[1]
+                : System.getProperty(LocatorStore.STORE_FILE_PROPERTY, LocatorStore.DEFAULT_STORE_FILE));
+
+        if ("stats".equals(args[0])) {
+            System.out.println(stats(file));
+        } else if ("merge".equals(args[0])) {
+            List<Path> shards = new ArrayList<>();
+            for (int i = 2; i < args.length; i++) {
+                shards.add(Paths.get(args[i]));
+            }
+            System.out.println(merge(file, shards.isEmpty() ? findShards(file) : shards));
+        } else if ("export".equals(args[0])) {
+            Path snapshot = Paths.get(args.length > 2 ? args[2] : LocatorSnapshot.DEFAULT_RESOURCE);
+            long maxAgeMillis = args.length > 3 ? TimeUnit.DAYS.toMillis(Long.parseLong(args[3])) : 0;
+            System.out.println(export(file, snapshot, maxAgeMillis));
+        } else {
+            long maxAgeMillis = args.length > 2 ? TimeUnit.DAYS.toMillis(Long.parseLong(args[2])) : 0;
+            System.out.println(compact(file, maxAgeMillis));
+        }
+    }
+
+    /**
+     * @param file The store file.
+     * @return a short description of what the store holds.
+     */
+    public static String stats(Path file) {
+        DB db = LocatorStore.openDb(file.toString());
+        try {
+            Map<Long, Fingerprint> fingerprints = LocatorStore.fingerprints(db);
+
+            long oldest = Long.MAX_VALUE;
+            long newest = Long.MIN_VALUE;
+            long strategies = 0;
+            for (Fingerprint fingerprint : fingerprints.values()) {
+                oldest = Math.min(oldest, fingerprint.getLearnedAt());
+                newest = Math.max(newest, fingerprint.getLearnedAt());
+                strategies += fingerprint.getStrategies().size();
+            }
+
+            long now = System.currentTimeMillis();
+            return file + ": " + fingerprints.size() + " fingerprints, " + strategies + " strategies, "
+                    + LocatorStore.keys(db).size() + " known keys, "
+                    + LocatorStore.timesToSatisfy(db).size() + " times to satisfy, "
+                    + LocatorStore.hotKeys(db).get().length + " hot keys"
+                    + (fingerprints.isEmpty() ? "" : ", learned " + TimeUnit.MILLISECONDS.toDays(now - newest)
+                    + " to " + TimeUnit.MILLISECONDS.toDays(now - oldest) + " days ago");
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Rewrites the store without expired entries and with URL variants merged, re-normalizing URLs
+     * with the rules the store was written with.
+     *
+     * @param file The store file.
+     * @param maxAgeMillis Drop fingerprints neither learned nor used longer ago than this, or 0 to
+     *            keep all.
+     * @return what was kept, dropped and merged.
+     */
+    public static Result compact(Path file, long maxAgeMillis) throws IOException {
+        return compact(file, maxAgeMillis, null);
+    }
+
+    /**
+     * Rewrites the store without expired entries and with URL variants merged.
+     *
+     * @param file The store file.
+     * @param maxAgeMillis Drop fingerprints neither learned nor used longer ago than this, or 0 to
+     *            keep all.
+     * @param normalizer The rules to re-normalize stored URLs by, or null for the ones the store was
+     *            written with.
+     * @return what was kept, dropped and merged.
+     */
+    public static Result compact(Path file, long maxAgeMillis, UrlNormalizer normalizer) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compacting");
+        Files.deleteIfExists(compacted);
+
+        long cutoff = maxAgeMillis > 0 ? System.currentTimeMillis() - maxAgeMillis : Long.MIN_VALUE;
+        long expired = 0;
+        long merged = 0;
+
+        FileLock lock = lockOrFail(file);
+        DB source = LocatorStore.openDb(file.toString());
+        DB target = LocatorStore.openDb(compacted.toString());
+        try {
+            BTreeMap<Long, Fingerprint> fingerprints = LocatorStore.fingerprints(target);
+            BTreeMap<Long, String> keys = LocatorStore.keys(target);
+            BTreeMap<Long, String> sourceKeys = LocatorStore.keys(source);
+            Map<Long, Long> lastSeen = LocatorStore.lastSeen(target);
+            Map<Long, Long> sourceLastSeen = LocatorStore.lastSeen(source);
+            if (normalizer == null) {
+                normalizer = LocatorStore.storedNormalizer(source);
+            }
+
+            long[] hot = LocatorStore.hotKeys(source).get();
+            Map<Long, Long> hotMoves = new HashMap<>(hot.length * 2);
+            for (long id : hot) {
+                hotMoves.put(id, null);
+            }
+
+            Map<Long, Fingerprint> sourceFingerprints = LocatorStore.fingerprints(source);
+            for (Map.Entry<Long, Fingerprint> entry : sourceFingerprints.entrySet()) {
+                Fingerprint fingerprint = entry.getValue();
+                Long seen = sourceLastSeen.get(entry.getKey());
+                if (lastUsed(fingerprint, seen) < cutoff) {
+                    expired++;
+                    continue;
+                }
+
+                long id = entry.getKey();
+                String encoded = sourceKeys.get(id);
+                if (encoded != null) {
+                    LocatorKey key = LocatorStore.decodeKey(encoded);
+                    LocatorKey renormalized = LocatorKey.of(normalizer.normalize(key.getUrl()), key.getDescription());
+                    id = renormalized.getId();
+                    encoded = LocatorStore.encodeKey(renormalized);
+                }
+
+                Fingerprint existing = fingerprints.get(id);
+                if (existing != null) {
+                    merged++;
+                    fingerprint = combine(existing, fingerprint);
+                }
+
+                fingerprints.put(id, fingerprint);
+                if (encoded != null) {
+                    keys.put(id, encoded);
+                }
+                if (seen != null) {
+                    lastSeen.merge(id, seen, Math::max);
+                }
+                if (hotMoves.containsKey(entry.getKey())) {
+                    hotMoves.put(entry.getKey(), id);
+                }
+            }
+
+            LocatorStore.timesToSatisfy(target).putAll(LocatorStore.timesToSatisfy(source));
+
+            Atomic.Var<long[]> hotKeys = LocatorStore.hotKeys(target);
+            // merged variants share one id
+            Set<Long> moved = new LinkedHashSet<>();
+            for (long id : hot) {
+                Long to = hotMoves.get(id);
+                if (to != null) {
+                    moved.add(to);
+                }
+            }
+            hotKeys.set(Longs.toArray(moved));
+            LocatorStore.urlNormalizer(target).set(normalizer.toJson());
+
+            target.commit();
+            long kept = fingerprints.size();
+
+            target.close();
+            source.close();
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            return new Result(kept, expired, merged);
+        } finally {
+            if (!target.isClosed()) {
+                target.close();
+            }
+            if (!source.isClosed()) {
+                source.close();
+            }
+            LocatorStore.unlock(lock);
+            Files.deleteIfExists(Paths.get(compacted + ".lock"));
+        }
+    }
+
+    /**
+     * @param file The store file.
+     * @return the shard files written next to it by {@code betterwait.shard} or a locked store.
+     */
+    public static List<Path> findShards(Path file) throws IOException {
+        String pattern = LocatorStore.shardFile(file.getFileName().toString(), "*");
+        Path dir = file.toAbsolutePath().getParent();
+        List<Path> shards = new ArrayList<>();
+        try (DirectoryStream<Path> found = Files.newDirectoryStream(dir, pattern)) {
+            for (Path shard : found) {
+                shards.add(shard);
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Folds shards into the store and deletes them. Where both hold a fingerprint for the same key,
+     * the more recently learned one is kept, with the history of the other; shard timings replace
+     * the store's, and the later of the last-used times is kept.
+     *
+     * @param file The store file.
+     * @param shards The shard files.
+     * @return how many fingerprints the store holds, and how many keys were in both.
+     */
+    public static Result merge(Path file, List<Path> shards) throws IOException {
+        long merged = 0;
+        int maxHotKeys = Integer.getInteger(LocatorCache.MAX_ENTRIES_PROPERTY, 10000);
+
+        FileLock lock = lockOrFail(file);
+        DB target = LocatorStore.openDb(file.toString());
+        try {
+            BTreeMap<Long, Fingerprint> fingerprints = LocatorStore.fingerprints(target);
+            BTreeMap<Long, String> keys = LocatorStore.keys(target);
+            Atomic.Var<long[]> hotKeys = LocatorStore.hotKeys(target);
+
+            for (Path shard : shards) {
+                FileLock shardLock = lockOrFail(shard);
+                DB source = LocatorStore.openDb(shard.toString());
+                try {
+                    Map<Long, Fingerprint> sourceFingerprints = LocatorStore.fingerprints(source);
+                    for (Map.Entry<Long, Fingerprint> entry : sourceFingerprints.entrySet()) {
+                        Fingerprint existing = fingerprints.get(entry.getKey());
+                        if (existing == null) {
+                            fingerprints.put(entry.getKey(), entry.getValue());
+                        } else if (!existing.equals(entry.getValue())) {
+                            merged++;
+                            fingerprints.put(entry.getKey(), combine(existing, entry.getValue()));
+                        }
+                    }
+
+                    Map<Long, String> sourceKeys = LocatorStore.keys(source);
+                    for (Map.Entry<Long, String> entry : sourceKeys.entrySet()) {
+                        keys.putIfAbsent(entry.getKey(), entry.getValue());
+                    }
+
+                    LocatorStore.timesToSatisfy(target).putAll(LocatorStore.timesToSatisfy(source));
+
+                    Map<Long, Long> lastSeen = LocatorStore.lastSeen(target);
+                    Map<Long, Long> sourceLastSeen = LocatorStore.lastSeen(source);
+                    for (Map.Entry<Long, Long> entry : sourceLastSeen.entrySet()) {
+                        lastSeen.merge(entry.getKey(), entry.getValue(), Math::max);
+                    }
+
+                    // the most recent run's hot keys go last, and the oldest are dropped first
+                    Set<Long> hot = new LinkedHashSet<>(Longs.asList(hotKeys.get()));
+                    for (long id : LocatorStore.hotKeys(source).get()) {
+                        hot.remove(id);
+                        hot.add(id);
+                    }
+                    List<Long> ids = new ArrayList<>(hot);
+                    hotKeys.set(Longs.toArray(ids.subList(Math.max(0, ids.size() - maxHotKeys), ids.size())));
+
+                    target.commit();
+                } finally {
+                    source.close();
+                    LocatorStore.unlock(shardLock);
+                }
+                Files.delete(shard);
+                Files.deleteIfExists(Paths.get(shard + ".lock"));
+            }
+
+            return new Result(fingerprints.size(), 0, merged);
+        } finally {
+            target.close();
+            LocatorStore.unlock(lock);
+        }
+    }
+
+    /**
+     * Writes the store's fingerprints as a snapshot.
+     *
+     * @param file The store file.
+     * @param snapshot The snapshot file to write.
+     * @param maxAgeMillis Leave out fingerprints neither learned nor used longer ago than this, or 0
+     *            to keep all.
+     * @return how many fingerprints were exported and left out.
+     */
+    public static Result export(Path file, Path snapshot, long maxAgeMillis) throws IOException {
+        long cutoff = maxAgeMillis > 0 ? System.currentTimeMillis() - maxAgeMillis : Long.MIN_VALUE;
+        long expired = 0;
+
+        FileLock lock = lockOrFail(file);
+        DB source = LocatorStore.openDb(file.toString());
+        try {
+            SortedMap<Long, Fingerprint> exported = new TreeMap<>();
+            Map<Long, Fingerprint> fingerprints = LocatorStore.fingerprints(source);
+            Map<Long, Long> lastSeen = LocatorStore.lastSeen(source);
+            for (Map.Entry<Long, Fingerprint> entry : fingerprints.entrySet()) {
+                if (lastUsed(entry.getValue(), lastSeen.get(entry.getKey())) < cutoff) {
+                    expired++;
+                } else {
+                    exported.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            LocatorSnapshot.write(exported, snapshot);
+            return new Result(exported.size(), expired, 0);
+        } finally {
+            source.close();
+            LocatorStore.unlock(lock);
+        }
+    }
+
+    private static FileLock lockOrFail(Path file) throws IOException {
+        FileLock lock = LocatorStore.lock(file.toString());
+        if (lock == null) {
+            throw new IOException(file + " is in use by another process");
+        }
+        return lock;
+    }
+
+    private static long lastUsed(Fingerprint fingerprint, Long seen) {
+        return seen == null ? fingerprint.getLearnedAt() : Math.max(fingerprint.getLearnedAt(), seen);
+    }
+
+    private static Fingerprint combine(Fingerprint a, Fingerprint b) {
+        return a.getLearnedAt() > b.getLearnedAt() ? a.withHistoryFrom(b) : b.withHistoryFrom(a);
+    }
+}
@@ -0,0 +1,120 @@
+package com.sm1;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The key learned backup locators are stored under: a canonical description of the locator or
+ * condition, plus the normalized URL of the page, hashed to a fixed-width 64-bit id.
+ *
+ * <p>
+ * Descriptions are made stable across runs. {@code presenceOfElementLocated} and
+ * {@code visibilityOfElementLocated}, which both wait for one element, are reduced to their
+ * {@code By} so they share learned locators; every other condition keeps its own description, so a
+ * condition that returns something other than that element is never answered with it. The current
+ * value some conditions report, as in {@code attributeToBe}, is dropped, and identity hash codes
+ * and lambda addresses are stripped from {@code toString()} values.
+ */
+public final class LocatorKey {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private static final String BY_PREFIX = "By.";
+    // the toString() of presenceOfElementLocated and visibilityOfElementLocated
+    private static final Pattern ELEMENT_LOCATED = Pattern.compile(
+            "^(?:presence of element located by: |visibility of element located by )(By\\.\\w+: .*)$", Pattern.DOTALL);
+    private static final Pattern CURRENT_VALUE = Pattern.compile("\\. Current [\\w ]+: \".*\"$", Pattern.DOTALL);
+    // the hidden class suffix of a lambda's class name, e.g. Foo$$Lambda$14/0x0000000800c03000
+    private static final Pattern LAMBDA_ADDRESS = Pattern.compile("(\\$\\$Lambda(?:\\$\\d+)?)/(?:0x)?[0-9a-fA-F]+(?=@|$)");
+    private static final Pattern IDENTITY_HASH = Pattern.compile("@[0-9a-fA-F]+$");
+
+    private final String url;
+    private final String description;
+    private final long id;
+
+    private LocatorKey(String url, String description) {
+        this.url = url;
+        this.description = description;
+        this.id = HASH.newHasher()
+                .putString(url, StandardCharsets.UTF_8)
+                .putChar('\n')
+                .putString(description, StandardCharsets.UTF_8)
+                .hash()
+                .asLong();
+    }
+
+    /**
+     * @param normalizedUrl The page URL, already normalized.
+     * @param description The canonical description, from {@link #describe(Object)}.
+     * @return the key.
+     */
+    public static LocatorKey of(String normalizedUrl, String description) {
+        return new LocatorKey(normalizedUrl, description);
+    }
+
+    /**
+     * @param condition A locator, condition or any other object a wait was given.
+     * @return a description of it that is the same from run to run.
+     */
+    public static String describe(Object condition) {
+
+        String description = String.valueOf(condition);
+
+        if (description.startsWith(BY_PREFIX)) {
+            return description;
+        }
+
+        Matcher located = ELEMENT_LOCATED.matcher(description);
+        if (located.find()) {
+            return located.group(1);
+        }
+
+        description = CURRENT_VALUE.matcher(description).replaceFirst("");
+        description = LAMBDA_ADDRESS.matcher(description).replaceFirst("$1");
+        return IDENTITY_HASH.matcher(description).replaceFirst("");
+    }
+
+    /**
+     * @param description A description built by {@link #describe(Object)}.
+     * @return true if it is a lone {@code By}, the key of a wait for one element that backup
+     *         locators can stand in for.
+     */
+    public static boolean isElementLocator(String description) {
+        return description.startsWith(BY_PREFIX);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return the 64-bit id the store is keyed by.
+     */
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LocatorKey && ((LocatorKey) o).id == id
+                && ((LocatorKey) o).url.equals(url) && ((LocatorKey) o).description.equals(description);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return description + " @ " + url;
+    }
+}
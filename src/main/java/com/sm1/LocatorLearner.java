@@ -0,0 +1,265 @@
+package com.sm1;
+
+import com.google.common.cache.CacheBuilder;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Defers learning backup locators until the driver that found the element is idle.
+ *
+ * <p>
+ * Elements are queued by driver, page and original locator, and whole pages by driver and page.
+ * A locator that is already waiting to be learned on the same driver and page is coalesced: the
+ * newer element replaces the queued one. Queued learning runs on the thread that waits on the
+ * driver, never on a thread of its own, since a driver is not safe to call from two threads: waits
+ * run it while they sleep between polls, and {@link #drain(WebDriver)} runs what is left. At most
+ * {@code betterwait.learner.capacity} (256) tasks are queued across all drivers; when the queue
+ * is full the oldest task is dropped and counted, which also clears out the tasks of drivers that
+ * have quit.
+ *
+ * <p>
+ * The learner also remembers when each locator was last learned on each page, for up to
+ * {@code betterwait.learner.maxEntries} (10000) locators, so waits can skip re-learning locators
+ * that were refreshed recently without reading the store each time.
+ */
+public final class LocatorLearner {
+
+    static final String CAPACITY_PROPERTY = "betterwait.learner.capacity";
+    static final String MAX_ENTRIES_PROPERTY = "betterwait.learner.maxEntries";
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    // names pages apart from locator descriptions, which start with "By." or a condition name
+    static final String PAGE_PREFIX = "page ";
+
+    private final int capacity;
+    // oldest first; guarded by itself
+    private final LinkedHashMap<TaskKey, Task> queue = new LinkedHashMap<>();
+    private final Map<LocatorKey, Long> lastLearned = CacheBuilder.newBuilder()
+            .maximumSize(Integer.getInteger(MAX_ENTRIES_PROPERTY, 10000))
+            .<LocatorKey, Long>build()
+            .asMap();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // lets idle waits skip the lock
+    private volatile int queued;
+
+    private static class Holder {
+        static final LocatorLearner INSTANCE = new LocatorLearner(
+                Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY));
+    }
+
+    /**
+     * What a queued task is coalesced by: the driver, by identity, and the locator's key on the
+     * driver's page, or the page's own key for a whole page.
+     */
+    private static final class TaskKey {
+        final WebDriver driver;
+        final LocatorKey key;
+
+        TaskKey(WebDriver driver, LocatorKey key) {
+            this.driver = PageContext.unwrap(driver);
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TaskKey && ((TaskKey) o).driver == driver && ((TaskKey) o).key.equals(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(driver) * 31 + key.hashCode();
+        }
+    }
+
+    private static class Task {
+        final WebElement element;
+        final String originalLocator;
+        final WebDriver driver;
+        final boolean onlyIfChanged;
+        final WaitListener listener;
+
+        Task(WebElement element, String originalLocator, WebDriver driver, boolean onlyIfChanged, WaitListener listener) {
+            this.element = element;
+            this.originalLocator = originalLocator;
+            this.driver = driver;
+            this.onlyIfChanged = onlyIfChanged;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * @return the learner shared by this JVM.
+     */
+    public static LocatorLearner get() {
+        return Holder.INSTANCE;
+    }
+
+    private LocatorLearner(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues an element to be learned the next time its driver is idle.
+     *
+     * @param element The element a wait returned.
+     * @param originalLocator The locator description the wait was given.
+     * @param driver The driver the element belongs to.
+     * @param onlyIfChanged Whether to skip the store write when the backup locators did not change.
+     * @param listener Told how long learning took, or null.
+     * @return false if the queue was full and an older task was dropped to make room.
+     */
+    public boolean submit(WebElement element, String originalLocator, WebDriver driver, boolean onlyIfChanged,
+                          WaitListener listener) {
+        String url = Locators.normalizeUrl(PageContext.currentUrl(driver));
+        return enqueue(new TaskKey(driver, LocatorKey.of(url, LocatorKey.describe(originalLocator))),
+                new Task(element, originalLocator, driver, onlyIfChanged, listener));
+    }
+
+    /**
+     * Queues a page to have all its elements learned the next time its driver is idle.
+     *
+     * @param driver The driver showing the page.
+     * @param normalizedUrl The page URL, already normalized. A page already waiting is not queued
+     *        again.
+     * @param listener Told how long learning took, or null.
+     * @return false if the queue was full and an older task was dropped to make room.
+     */
+    public boolean submitPage(WebDriver driver, String normalizedUrl, WaitListener listener) {
+        String pageKey = PAGE_PREFIX + normalizedUrl;
+        return enqueue(new TaskKey(driver, LocatorKey.of(normalizedUrl, PAGE_PREFIX)),
+                new Task(null, pageKey, driver, false, listener));
+    }
+
+    private boolean enqueue(TaskKey key, Task task) {
+        boolean full = false;
+        synchronized (queue) {
+            // a coalesced task moves to the back, as if queued afresh
+            if (queue.remove(key) == null && queue.size() >= capacity) {
+                Iterator<Task> oldest = queue.values().iterator();
+                oldest.next();
+                oldest.remove();
+                dropped.incrementAndGet();
+                full = true;
+            }
+            queue.put(key, task);
+            queued = queue.size();
+        }
+        return !full;
+    }
+
+    /**
+     * Runs the oldest task queued for the driver, on the calling thread.
+     *
+     * @return false if none was queued.
+     */
+    boolean runNext(WebDriver driver) {
+        if (queued == 0) {
+            return false;
+        }
+
+        WebDriver owner = PageContext.unwrap(driver);
+        TaskKey key = null;
+        Task task = null;
+        synchronized (queue) {
+            for (Iterator<Map.Entry<TaskKey, Task>> it = queue.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<TaskKey, Task> entry = it.next();
+                if (entry.getKey().driver == owner) {
+                    key = entry.getKey();
+                    task = entry.getValue();
+                    it.remove();
+                    break;
+                }
+            }
+            queued = queue.size();
+        }
+        if (task == null) {
+            return false;
+        }
+
+        long started = System.nanoTime();
+        if (task.element == null) {
+            String url = Locators.updatePageLocators(task.driver);
+            if (url != null && task.listener != null) {
+                task.listener.locatorLearned(PAGE_PREFIX + url, System.nanoTime() - started);
+            }
+        } else if (Locators.updateLocator(task.element, task.originalLocator, task.driver, task.onlyIfChanged)) {
+            markLearned(key.key);
+            if (task.listener != null) {
+                task.listener.locatorLearned(task.originalLocator, System.nanoTime() - started);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs every task queued for the driver, on the calling thread. Call it from the thread that
+     * uses the driver, e.g. at the end of a test before the driver quits.
+     *
+     * @param driver The driver whose queued learning should finish.
+     */
+    public void drain(WebDriver driver) {
+        while (runNext(driver)) {
+            // each task ran above
+        }
+    }
+
+    /**
+     * Forgets the tasks queued for the driver without running them, e.g. when it has quit.
+     *
+     * @param driver The driver whose queued learning should be dropped.
+     */
+    public void discard(WebDriver driver) {
+        WebDriver owner = PageContext.unwrap(driver);
+        synchronized (queue) {
+            queue.keySet().removeIf(key -> key.driver == owner);
+            queued = queue.size();
+        }
+    }
+
+    /**
+     * @param key The locator's key on its page.
+     * @param millis How recent a refresh counts, in milliseconds.
+     * @return true if the locator was learned on that page less than {@code millis} ago.
+     */
+    public boolean learnedWithin(LocatorKey key, long millis) {
+        if (millis <= 0) {
+            return false;
+        }
+        Long learnedAt = lastLearned.get(key);
+        return learnedAt != null && System.currentTimeMillis() - learnedAt < millis;
+    }
+
+    /**
+     * Records that a locator's backups were just refreshed on a page.
+     *
+     * @param key The locator's key on its page.
+     */
+    public void markLearned(LocatorKey key) {
+        markLearned(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Records when a locator's backups were learned on a page, keeping a later time already
+     * recorded.
+     *
+     * @param key The locator's key on its page.
+     * @param learnedAt When they were learned, in epoch milliseconds.
+     */
+    void markLearned(LocatorKey key, long learnedAt) {
+        lastLearned.merge(key, learnedAt, Math::max);
+    }
+
+    /**
+     * @return how many tasks were dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,230 @@
+package com.sm1;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An immutable, read-only copy of learned backup locators, exported from a store by
+ * {@link LocatorIndexTool} and shipped with the tests, so a fresh machine can recover elements
+ * before it has learned anything itself.
+ *
+ * <p>
+ * The file holds the fingerprint ids in ascending order, then the offset of each record, then the
+ * records in {@link FingerprintSerializer} form. A file is memory-mapped; a lookup binary-searches
+ * the ids in place and decodes only the matching record, so opening a snapshot costs nothing in
+ * proportion to its size.
+ *
+ * <p>
+ * The snapshot is read from the {@code betterwait.snapshot} system property, a file path or a
+ * {@code classpath:} resource name, and defaults to the {@link #DEFAULT_RESOURCE} resource if one
+ * is on the classpath. Resources inside a jar cannot be mapped and are read into memory once.
+ */
+public final class LocatorSnapshot {
+
+    public static final String SNAPSHOT_PROPERTY = "betterwait.snapshot";
+    public static final String DEFAULT_RESOURCE = "BetterWait_Locators.snapshot";
+    public static final String CLASSPATH_PREFIX = "classpath:";
+
+    private static final Logger LOG = Logger.getLogger(LocatorSnapshot.class.getName());
+
+    private static final int MAGIC = 0x42575350;
+    private static final int FORMAT_VERSION = 1;
+    // magic, version and count
+    private static final int HEADER = 12;
+
+    private static final LocatorSnapshot EMPTY = new LocatorSnapshot(emptyBuffer(), "none");
+
+    private final ByteBuffer buffer;
+    private final String source;
+    private final int count;
+    private final int offsets;
+    private final int records;
+
+    private static class Holder {
+        static final LocatorSnapshot INSTANCE = load();
+    }
+
+    private LocatorSnapshot(ByteBuffer buffer, String source) {
+        if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(source + " is not a BetterWait snapshot");
+        }
+        if (buffer.getInt(4) > FORMAT_VERSION) {
+            throw new IllegalArgumentException(source + " was written by a newer snapshot format");
+        }
+        this.buffer = buffer;
+        this.source = source;
+        this.count = buffer.getInt(8);
+        this.offsets = HEADER + count * 8;
+        this.records = offsets + count * 4;
+        if (records > buffer.limit()) {
+            throw new IllegalArgumentException(source + " is truncated");
+        }
+    }
+
+    /**
+     * @return the snapshot configured for this JVM, or an empty one if there is none.
+     */
+    public static LocatorSnapshot get() {
+        return Holder.INSTANCE;
+    }
+
+    private static LocatorSnapshot load() {
+        String configured = System.getProperty(SNAPSHOT_PROPERTY);
+        try {
+            if (configured == null) {
+                LocatorSnapshot shipped = fromResource(DEFAULT_RESOURCE);
+                return shipped == null ? EMPTY : shipped;
+            }
+            if (configured.startsWith(CLASSPATH_PREFIX)) {
+                LocatorSnapshot shipped = fromResource(configured.substring(CLASSPATH_PREFIX.length()));
+                if (shipped == null) {
+                    LOG.warning("BetterWait snapshot resource " + configured + " was not found");
+                    return EMPTY;
+                }
+                return shipped;
+            }
+            return open(Paths.get(configured));
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.log(Level.WARNING, "BetterWait could not load the locator snapshot " + configured, e);
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Maps a snapshot file.
+     */
+    public static LocatorSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new LocatorSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.toString());
+        }
+    }
+
+    /**
+     * Reads a snapshot from the classpath.
+     *
+     * @param name The resource name, relative to the classpath root.
+     * @return the snapshot, or null if there is no such resource.
+     */
+    public static LocatorSnapshot fromResource(String name) throws IOException {
+        String resource = name.startsWith("/") ? name.substring(1) : name;
+        ClassLoader loader = LocatorSnapshot.class.getClassLoader();
+        try (InputStream in = loader == null ? ClassLoader.getSystemResourceAsStream(resource) : loader.getResourceAsStream(resource)) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            for (int n = in.read(chunk); n >= 0; n = in.read(chunk)) {
+                bytes.write(chunk, 0, n);
+            }
+            return new LocatorSnapshot(ByteBuffer.wrap(bytes.toByteArray()), CLASSPATH_PREFIX + resource);
+        }
+    }
+
+    /**
+     * Writes fingerprints as a snapshot file, replacing it atomically where the file system allows.
+     *
+     * @param fingerprints The fingerprints by id, in ascending id order.
+     * @param file The snapshot file.
+     */
+    public static void write(SortedMap<Long, Fingerprint> fingerprints, Path file) throws IOException {
+        int count = fingerprints.size();
+        ByteBuffer index = ByteBuffer.allocate(HEADER + count * 12);
+        index.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(count);
+
+        DataOutput2 records = new DataOutput2();
+        int[] offsets = new int[count];
+        int i = 0;
+        for (Map.Entry<Long, Fingerprint> entry : fingerprints.entrySet()) {
+            index.putLong(entry.getKey());
+            offsets[i++] = records.pos;
+            FingerprintSerializer.INSTANCE.serialize(records, entry.getValue());
+        }
+        for (int offset : offsets) {
+            index.putInt(offset);
+        }
+        index.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+            ByteBuffer data = ByteBuffer.wrap(records.buf, 0, records.pos);
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the fingerprint stored under the id, or null if there is none.
+     */
+    public Fingerprint get(long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long found = buffer.getLong(HEADER + mid * 8);
+            if (found < id) {
+                low = mid + 1;
+            } else if (found > id) {
+                high = mid - 1;
+            } else {
+                return decode(mid);
+            }
+        }
+        return null;
+    }
+
+    public Fingerprint get(LocatorKey key) {
+        return get(key.getId());
+    }
+
+    private Fingerprint decode(int index) {
+        try {
+            int offset = records + buffer.getInt(offsets + index * 4);
+            return FingerprintSerializer.INSTANCE.deserialize(new DataInput2.ByteBuffer(buffer, offset), -1);
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "BetterWait could not read a fingerprint from " + source, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return how many fingerprints the snapshot holds.
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "LocatorSnapshot(" + source + ", " + count + " fingerprints)";
+    }
+
+    private static ByteBuffer emptyBuffer() {
+        return ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(FORMAT_VERSION).putInt(0);
+    }
+}
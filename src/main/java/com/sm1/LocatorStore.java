@@ -0,0 +1,572 @@
+package com.sm1;
+
+import org.mapdb.Atomic;
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The single backup locator store shared by every wait in the JVM. It also keeps how long each wait
+ * condition typically takes, for {@link PollingStrategies#learned(PollingStrategy)}.
+ *
+ * <p>
+ * The store is opened lazily on first use and kept open until the JVM exits. Entries are keyed by
+ * the 64-bit id of a {@link LocatorKey} and hold a {@link Fingerprint} in binary form. Writes go into
+ * the current MapDB transaction and are committed in batches by a background thread, so lookups and
+ * updates are plain map operations. Stores written by earlier versions, which kept backup locators as
+ * JSON strings, are converted the first time they are opened.
+ *
+ * <p>
+ * The file is memory-mapped where the platform supports it; set {@code betterwait.store.mmap} to
+ * {@code false} to use plain file I/O. Next to each fingerprint the store records the URL and
+ * description its key was built from, when each key was last looked up or waited on, and the
+ * URL normalization rules in use, so {@link LocatorIndexTool} can drop and merge entries offline.
+ * On close it saves the ids held in the in-memory cache, which a later run can preload with
+ * {@code betterwait.cache.warmStart}.
+ *
+ * <p>
+ * Within a JVM any number of threads read the maps concurrently without locks. Backup locators and
+ * condition timings are written behind, into concurrent maps, and copied into the store by the
+ * commit thread, so one thread writes to the file. A MapDB file can only be opened by one process
+ * at a time, which the store enforces with a {@code .lock} file beside it, so parallel forks each
+ * write a shard of their own: set {@code betterwait.shard} to a per-fork value such as Surefire's
+ * {@code ${surefire.forkNumber}}. A shard reads through to the main store, opened read-only under a
+ * shared lock so no process can write it meanwhile, and {@code LocatorIndexTool merge} folds the
+ * shards back in after the run. A process that finds the main store locked by another falls back to
+ * a shard named after its pid; while another process writes the main store, a shard does not read
+ * it and lookups fall back to the {@link LocatorSnapshot} until the shards are merged.
+ */
+public final class LocatorStore {
+
+    public static final String STORE_FILE_PROPERTY = "betterwait.store";
+    public static final String DEFAULT_STORE_FILE = "BetterWait_Locators.db";
+    public static final String MMAP_PROPERTY = "betterwait.store.mmap";
+    public static final String SHARD_PROPERTY = "betterwait.shard";
+
+    static final String FINGERPRINTS = "fingerprints";
+    static final String KEYS = "keys";
+    static final String TIMES_TO_SATISFY = "timesToSatisfy";
+    static final String HOT_KEYS = "hotKeys";
+    static final String LAST_SEEN = "lastSeen";
+    static final String URL_NORMALIZER = "urlNormalizer";
+
+    private static final Logger LOG = Logger.getLogger(LocatorStore.class.getName());
+
+    private static final long COMMIT_INTERVAL_MILLIS = 1000;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    // JSON backup locators kept by earlier versions
+    private static final String LEGACY_LOCATORS = "backupLocators";
+
+    private final DB db;
+    private final BTreeMap<Long, Fingerprint> locators;
+    private final BTreeMap<Long, String> keys;
+    private final BTreeMap<String, Long> timesToSatisfy;
+    private final Atomic.Var<long[]> hotKeys;
+    private final BTreeMap<Long, Long> lastSeen;
+    private final Atomic.String urlRules;
+    private final Map<String, Long> pendingTimes = new ConcurrentHashMap<>();
+    // ids seen in this run; each is written to lastSeen once per run
+    private final Set<Long> seen = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Long> pendingSeen = new ConcurrentHashMap<>();
+    private UrlNormalizer recordedNormalizer;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final ScheduledExecutorService committer;
+
+    private final List<Runnable> beforeCommit = new CopyOnWriteArrayList<>();
+    private final List<Runnable> beforeClose = new CopyOnWriteArrayList<>();
+
+    // held for as long as the store is open; MapDB does not lock the file itself
+    private final FileLock fileLock;
+
+    // the main store, read-only, when this process writes a shard and no process writes the main
+    // store; otherwise null
+    private final DB base;
+    private final FileLock baseLock;
+    private final BTreeMap<Long, Fingerprint> baseLocators;
+    private final BTreeMap<String, Long> baseTimesToSatisfy;
+    private final long[] baseHotKeys;
+
+    private volatile WaitListener listener;
+
+    private static class Holder {
+        static final LocatorStore INSTANCE = new LocatorStore(
+                System.getProperty(STORE_FILE_PROPERTY, DEFAULT_STORE_FILE), System.getProperty(SHARD_PROPERTY));
+    }
+
+    /**
+     * @return the store shared by this JVM, opening it on first use.
+     */
+    public static LocatorStore get() {
+        return Holder.INSTANCE;
+    }
+
+    LocatorStore(String fileName, String shard) {
+        String target = shard == null || shard.isEmpty() ? fileName : shardFile(fileName, shard);
+        FileLock locked = lock(target);
+        if (locked == null) {
+            String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+            LOG.warning("BetterWait store " + target + " is in use by another process; writing to shard pid-" + pid
+                    + " instead. Set " + SHARD_PROPERTY + " per fork and merge the shards with LocatorIndexTool.");
+            target = shardFile(fileName, "pid-" + pid);
+            locked = lock(target);
+            if (locked == null) {
+                throw new IllegalStateException("BetterWait could not lock " + target);
+            }
+        }
+        fileLock = locked;
+        db = openDb(target);
+
+        FileLock shared = null;
+        DB readOnly = null;
+        if (!target.equals(fileName) && new File(fileName).isFile()) {
+            shared = lockShared(fileName);
+            if (shared == null) {
+                LOG.info("BetterWait store " + fileName + " is being written by another process; " + target
+                        + " reads backup locators from the snapshot only until the shards are merged.");
+            }
+            else {
+                readOnly = openReadOnly(fileName);
+                if (readOnly == null) {
+                    unlock(shared);
+                    shared = null;
+                }
+            }
+        }
+        baseLock = shared;
+        base = readOnly;
+        baseLocators = base != null && base.exists(FINGERPRINTS)
+                ? base.treeMap(FINGERPRINTS, Serializer.LONG, FingerprintSerializer.INSTANCE).open() : null;
+        baseTimesToSatisfy = base != null && base.exists(TIMES_TO_SATISFY)
+                ? base.treeMap(TIMES_TO_SATISFY, Serializer.STRING, Serializer.LONG).open() : null;
+        baseHotKeys = base != null && base.exists(HOT_KEYS)
+                ? base.atomicVar(HOT_KEYS, Serializer.LONG_ARRAY).open().get() : new long[0];
+
+        locators = fingerprints(db);
+        keys = keys(db);
+        timesToSatisfy = timesToSatisfy(db);
+        hotKeys = hotKeys(db);
+        lastSeen = lastSeen(db);
+        urlRules = urlNormalizer(db);
+
+        if (locators.isEmpty() && db.exists(LEGACY_LOCATORS)) {
+            convertLegacyLocators();
+        }
+
+        committer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "BetterWait-store-commit");
+            t.setDaemon(true);
+            return t;
+        });
+        committer.scheduleWithFixedDelay(this::commitQuietly, COMMIT_INTERVAL_MILLIS, COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "BetterWait-store-shutdown"));
+    }
+
+    static DB openDb(String fileName) {
+        DBMaker.Maker maker = DBMaker.fileDB(fileName).transactionEnable();
+        if (Boolean.parseBoolean(System.getProperty(MMAP_PROPERTY, "true"))) {
+            maker = maker.fileMmapEnableIfSupported().fileMmapPreclearDisable();
+        }
+        return maker.make();
+    }
+
+    /**
+     * Locks a store file against other processes through a {@code .lock} file beside it.
+     *
+     * @return the lock, or null if another process holds it.
+     */
+    static FileLock lock(String fileName) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(Paths.get(fileName + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+            }
+            return lock;
+        } catch (OverlappingFileLockException e) {
+            closeQuietly(channel);
+            return null;
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException("BetterWait could not lock " + fileName, e);
+        }
+    }
+
+    /**
+     * Locks a store file for reading, through the same {@code .lock} file, so that no process can
+     * take it for writing meanwhile. Any number of readers may hold it at once, where the platform
+     * supports shared locks.
+     *
+     * @return the lock, or null if another process holds it for writing.
+     */
+    static FileLock lockShared(String fileName) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(Paths.get(fileName + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock(0, Long.MAX_VALUE, true);
+            if (lock == null) {
+                channel.close();
+            }
+            return lock;
+        } catch (OverlappingFileLockException e) {
+            closeQuietly(channel);
+            return null;
+        } catch (IOException e) {
+            closeQuietly(channel);
+            LOG.log(Level.WARNING, "BetterWait could not lock the main store " + fileName + " for reading", e);
+            return null;
+        }
+    }
+
+    static void unlock(FileLock lock) {
+        try {
+            lock.release();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "could not release store lock", e);
+        } finally {
+            closeQuietly(lock.channel());
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "could not close store lock", e);
+            }
+        }
+    }
+
+    /**
+     * Opens a store that other processes may be writing shards next to, or null if it does not
+     * exist or cannot be read. The caller holds its shared lock.
+     */
+    private static DB openReadOnly(String fileName) {
+        if (!new File(fileName).isFile()) {
+            return null;
+        }
+        try {
+            return DBMaker.fileDB(fileName).readOnly().fileLockDisable().make();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "BetterWait could not read the main store " + fileName + " from a shard", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the file a shard of the store is written to, e.g. {@code BetterWait_Locators.shard-3.db}.
+     */
+    static String shardFile(String fileName, String shard) {
+        String suffix = ".shard-" + shard;
+        return fileName.endsWith(".db")
+                ? fileName.substring(0, fileName.length() - 3) + suffix + ".db"
+                : fileName + suffix;
+    }
+
+    static BTreeMap<Long, Fingerprint> fingerprints(DB db) {
+        return db.treeMap(FINGERPRINTS, Serializer.LONG, FingerprintSerializer.INSTANCE).createOrOpen();
+    }
+
+    static BTreeMap<Long, String> keys(DB db) {
+        return db.treeMap(KEYS, Serializer.LONG, Serializer.STRING).createOrOpen();
+    }
+
+    static BTreeMap<String, Long> timesToSatisfy(DB db) {
+        return db.treeMap(TIMES_TO_SATISFY, Serializer.STRING, Serializer.LONG).createOrOpen();
+    }
+
+    static Atomic.Var<long[]> hotKeys(DB db) {
+        return db.atomicVar(HOT_KEYS, Serializer.LONG_ARRAY, new long[0]).createOrOpen();
+    }
+
+    static BTreeMap<Long, Long> lastSeen(DB db) {
+        return db.treeMap(LAST_SEEN, Serializer.LONG, Serializer.LONG).createOrOpen();
+    }
+
+    static Atomic.String urlNormalizer(DB db) {
+        return db.atomicString(URL_NORMALIZER).createOrOpen();
+    }
+
+    /**
+     * @return the URL normalization rules a store was written with, or the defaults if it does not
+     *         record them.
+     */
+    static UrlNormalizer storedNormalizer(DB db) {
+        String rules = urlNormalizer(db).get();
+        return rules == null || rules.isEmpty() ? UrlNormalizer.defaults() : UrlNormalizer.fromJson(rules);
+    }
+
+    /**
+     * @return the URL and description of a key in the form kept in the {@link #KEYS} map.
+     */
+    static String encodeKey(LocatorKey key) {
+        return key.getUrl() + '\n' + key.getDescription();
+    }
+
+    static LocatorKey decodeKey(String encoded) {
+        int split = encoded.indexOf('\n');
+        return LocatorKey.of(encoded.substring(0, split), encoded.substring(split + 1));
+    }
+
+    private void convertLegacyLocators() {
+        Map<Long, String> legacy = db
+                .treeMap(LEGACY_LOCATORS, Serializer.LONG, Serializer.STRING)
+                .open();
+
+        long now = System.currentTimeMillis();
+        int skipped = 0;
+        for (Map.Entry<Long, String> entry : legacy.entrySet()) {
+            try {
+                locators.put(entry.getKey(), Fingerprint.fromJson(entry.getValue(), now));
+            } catch (RuntimeException e) {
+                skipped++;
+            }
+        }
+        db.commit();
+
+        int converted = locators.size();
+        int failed = skipped;
+        LOG.info(() -> "BetterWait converted " + converted + " stored backup locators to fingerprints"
+                + (failed == 0 ? "" : ", skipped " + failed + " unreadable entries"));
+    }
+
+    /**
+     * @param key The page and locator.
+     * @return the stored fingerprint, or null if none has been learned.
+     */
+    public Fingerprint get(LocatorKey key) {
+        WaitListener listener = this.listener;
+        if (listener == null) {
+            return get(key.getId());
+        }
+
+        long started = System.nanoTime();
+        Fingerprint fingerprint = get(key.getId());
+        listener.storeRead(System.nanoTime() - started);
+        return fingerprint;
+    }
+
+    /**
+     * Stores a fingerprint. The write becomes durable on the next batched commit.
+     *
+     * @param key The page and locator.
+     * @param fingerprint The learned backup locators.
+     */
+    public void put(LocatorKey key, Fingerprint fingerprint) {
+        WaitListener listener = this.listener;
+        long started = listener == null ? 0 : System.nanoTime();
+
+        locators.put(key.getId(), fingerprint);
+        keys.putIfAbsent(key.getId(), encodeKey(key));
+        dirty.set(true);
+
+        if (listener != null) {
+            listener.storeWritten(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * @param id The 64-bit id of a {@link LocatorKey}.
+     * @return the stored fingerprint, or null.
+     */
+    Fingerprint get(long id) {
+        Fingerprint fingerprint = locators.get(id);
+        if (fingerprint == null && baseLocators != null) {
+            fingerprint = baseLocators.get(id);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Records that a key was used in this run, for {@link LocatorIndexTool}'s expiry. Only the first
+     * use in a run reaches the store, on the next batched commit.
+     *
+     * @param id The 64-bit id of a {@link LocatorKey}.
+     */
+    void touch(long id) {
+        if (seen.add(id)) {
+            pendingSeen.put(id, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return the ids saved by the last run as the ones it used, most recently used last.
+     */
+    long[] getHotKeys() {
+        long[] ids = hotKeys.get();
+        return ids.length == 0 ? baseHotKeys : ids;
+    }
+
+    void putHotKeys(long[] ids) {
+        hotKeys.set(ids);
+        dirty.set(true);
+    }
+
+    /**
+     * Reports the latency of backup locator reads and writes to a listener.
+     *
+     * @param listener The listener, or null to stop reporting.
+     */
+    public void setListener(WaitListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param conditionKey The description of a wait condition.
+     * @return the typical time the condition takes to be satisfied in milliseconds, or null if
+     *         it has not been recorded.
+     */
+    public Long getTimeToSatisfy(String conditionKey) {
+        Long millis = pendingTimes.get(conditionKey);
+        if (millis == null) {
+            millis = timesToSatisfy.get(conditionKey);
+        }
+        if (millis == null && baseTimesToSatisfy != null) {
+            millis = baseTimesToSatisfy.get(conditionKey);
+        }
+        return millis;
+    }
+
+    /**
+     * Records a condition's typical time. The write reaches the store on the next batched commit.
+     *
+     * @param conditionKey The description of a wait condition.
+     * @param millis The typical time the condition takes to be satisfied.
+     */
+    public void putTimeToSatisfy(String conditionKey, long millis) {
+        pendingTimes.put(conditionKey, millis);
+    }
+
+    /**
+     * Registers work to run before every commit, such as copying write-behind entries into the
+     * store.
+     */
+    void beforeCommit(Runnable task) {
+        beforeCommit.add(task);
+    }
+
+    /**
+     * Registers work to run once when the store is closed, before its final commit.
+     */
+    void beforeClose(Runnable task) {
+        beforeClose.add(task);
+    }
+
+    /**
+     * Commits pending writes, if there are any.
+     */
+    public synchronized void commit() {
+        if (db.isClosed()) {
+            return;
+        }
+        for (Runnable task : beforeCommit) {
+            task.run();
+        }
+        for (Iterator<Map.Entry<String, Long>> it = pendingTimes.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> entry = it.next();
+            timesToSatisfy.put(entry.getKey(), entry.getValue());
+            pendingTimes.remove(entry.getKey(), entry.getValue());
+            dirty.set(true);
+        }
+        for (Iterator<Map.Entry<Long, Long>> it = pendingSeen.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Long> entry = it.next();
+            lastSeen.put(entry.getKey(), entry.getValue());
+            it.remove();
+            dirty.set(true);
+        }
+        if (dirty.getAndSet(false)) {
+            recordNormalizer();
+            db.commit();
+        }
+    }
+
+    private void recordNormalizer() {
+        UrlNormalizer normalizer = Locators.getUrlNormalizer();
+        if (normalizer != recordedNormalizer) {
+            urlRules.set(normalizer.toJson());
+            recordedNormalizer = normalizer;
+        }
+    }
+
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (RuntimeException e) {
+            // keep the periodic commit alive; the writes stay pending for the next one
+            LOG.log(Level.WARNING, "BetterWait could not commit the locator store", e);
+        }
+    }
+
+    /**
+     * Commits pending writes and closes the underlying file. Called from the shutdown hook.
+     *
+     * <p>
+     * A periodic commit already running is left to finish, for up to
+     * {@value #CLOSE_TIMEOUT_MILLIS} ms, rather than interrupted: an interrupt closes the file
+     * channel under MapDB mid-write. The final commit runs on the closing thread.
+     */
+    public void close() {
+        committer.shutdown();
+        boolean interrupted = false;
+        try {
+            if (!committer.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOG.warning("BetterWait gave up waiting for the locator store's last periodic commit");
+            }
+        } catch (InterruptedException e) {
+            // commit first, for the same reason as above
+            interrupted = true;
+        }
+        closeDb();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void closeDb() {
+        if (!db.isClosed()) {
+            for (Runnable task : beforeClose) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOG.log(Level.WARNING, "BetterWait could not finish closing the locator store", e);
+                }
+            }
+            commit();
+            db.close();
+            if (base != null) {
+                base.close();
+            }
+            if (baseLock != null) {
+                unlock(baseLock);
+            }
+            unlock(fileLock);
+        }
+    }
+}
@@ -2,72 +2,343 @@ package com.sm1;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
-import org.mapdb.Serializer;
 import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.UnreachableBrowserException;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-
-import java.util.concurrent.ConcurrentMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.commons.io.IOUtils;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * Created by pat on 8/24/17.
  */
 public class Locators {
 
-    private static String JS_GENERATE_LOCATORS;
-    private static String JS_TRY_LOCATORS;
+    private static final Logger LOG = Logger.getLogger(Locators.class.getName());
+
+    private static final String NOT_INSTALLED = "__betterWaitNotInstalled";
+
+    private static volatile Scripts scripts;
+
+    private static volatile UrlNormalizer urlNormalizer = UrlNormalizer.defaults();
+
+    // null leaves the script's own defaults in place
+    private static volatile Map<String, Object> learningBudget;
+    private static volatile Map<String, Object> pageLearningBudget;
+
+    // normalized URLs whose elements have been fingerprinted together in this run
+    private static final Set<String> learnedPages = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The locator scripts as installed into the page, plus the short stubs that call the installed
+     * functions. Only the stubs travel over the wire once a page has the helpers. The stubs return
+     * {@code [location.href, result]}, so the page URL needs no round trip of its own.
+     */
+    private static final class Scripts {
+
+        final String install;
+        final String callGenerateLocators;
+        final String callTryLocators;
+        final String callGeneratePageLocators;
+        final String callFindEach;
+
+        Scripts(String generateLocators, String tryLocators) {
+            String version = Integer.toHexString((generateLocators + tryLocators).hashCode());
+            String check = "var bw = window.__betterWait;" +
+                    "if (!bw || bw.version !== '" + version + "') { return '" + NOT_INSTALLED + "'; }";
+
+            install = generateLocators + "\n" + tryLocators + "\nwindow.__betterWait.version = '" + version + "';\n";
+            callGenerateLocators = check + "return [location.href, bw.generateLocators(arguments[0], arguments[1])];";
+            callTryLocators = check + "return [location.href, bw.tryLocators(arguments[0])];";
+            callGeneratePageLocators = check + "return [location.href, bw.generatePageLocators(arguments[0], arguments[1])];";
+            // scripts supplied through useScripts may not define it
+            callFindEach = check + "return [location.href, bw.findEach ? bw.findEach(arguments[0]) : null];";
+        }
+    }
+
+
 
 
 
+    public static boolean updateLocator(WebElement element, String OriginalLocator, WebDriver driver){
 
+        return updateLocator(element, OriginalLocator, driver, false);
 
-    public static void updateLocator(WebElement element, String OriginalLocator, WebDriver driver){
+    }
+
+    /**
+     * Generates backup locators for an element and stores them under the original locator.
+     *
+     * @param onlyIfChanged skip the store write when the generated selectors are the same as the
+     *        ones already stored for this key
+     * @return true if the backup locators are current in the store.
+     */
+    public static boolean updateLocator(WebElement element, String OriginalLocator, WebDriver driver, boolean onlyIfChanged){
 
+        boolean updated = false;
 
         try {
 
             if (initJS()) {
 
                 JavascriptExecutor js = (JavascriptExecutor) driver;
-                String retVal = (String) js.executeScript(JS_GENERATE_LOCATORS, element);
-                System.out.println("retVal: " + retVal);
+                Scripts loaded = scripts();
+                Object retVal = callInstalled(js, loaded, loaded.callGenerateLocators, element, learningBudget);
+                LOG.finest(() -> "retVal: " + retVal);
+
+                String reported = pageUrl(driver, retVal);
+                String url = reported == null ? PageContext.fetchUrl(driver) : reported;
+                Fingerprint fingerprint = Fingerprint.fromScript(scriptResult(retVal), System.currentTimeMillis());
+                if (fingerprint == null) {
+                    return false;
+                }
+
+                LocatorKey key = LocatorKey.of(normalizeUrl(url), LocatorKey.describe(OriginalLocator));
+                LocatorCache cache = LocatorCache.get();
+                Fingerprint previous = cache.get(key);
+
+                if (fingerprint.isPartial()) {
+                    LOG.fine(() -> "learning budget ran out for: " + OriginalLocator);
+                    fingerprint = fingerprint.withMissingFrom(previous);
+                }
 
-                DB db = DBMaker.fileDB("BetterWait_Locators_" + getFileSafeString(OriginalLocator) + getFileSafeString(driver.getCurrentUrl()) + ".db").make();
-                ConcurrentMap<String, String> map = db.hashMap(OriginalLocator, Serializer.STRING, Serializer.STRING).createOrOpen();
-                map.put(OriginalLocator, retVal);
-                db.close();
+                if (onlyIfChanged && fingerprint.sameStrategies(previous)) {
+                    return true;
+                }
 
-                System.out.println("updated locators for: " + OriginalLocator);
+                cache.put(key, fingerprint.withHistoryFrom(previous));
+
+                LOG.fine(() -> "updated locators for: " + OriginalLocator);
+                updated = true;
 
             }
 
         }
+        catch (StaleElementReferenceException e){
+            // the page moved on before the element could be learned
+            LOG.fine(() -> "element went stale before it was learned: " + OriginalLocator);
+        }
+        catch (NoSuchSessionException | UnreachableBrowserException e){
+            // learning queued for a driver that has since quit
+            LOG.fine(() -> "session ended before " + OriginalLocator + " was learned");
+        }
         catch (Exception e){
-            System.out.println("BetterWait Error: ");
-            e.printStackTrace();
+            LOG.log(Level.WARNING, "BetterWait could not learn locators for " + OriginalLocator, e);
         }
 
+        return updated;
 
     }
 
+    /**
+     * Generates backup locators for every input, button, link and element with an id or name on
+     * the driver's page, in one script call. Each element is stored under the {@code By.id},
+     * {@code By.name} and {@code By.linkText} descriptions that would find it. Elements with none
+     * of these are skipped, since no wait could be keyed to them.
+     *
+     * <p>
+     * The page is marked as learned under the URL the script reports, never a remembered one that
+     * may be stale.
+     *
+     * @return the normalized URL of the page learned, or null if it could not be learned.
+     */
+    public static String updatePageLocators(WebDriver driver){
+
+        try {
+
+            if (initJS()) {
+
+                JavascriptExecutor js = (JavascriptExecutor) driver;
+                Scripts loaded = scripts();
+                Object retVal = callInstalled(js, loaded, loaded.callGeneratePageLocators, learningBudget, pageLearningBudget);
+
+                String reported = pageUrl(driver, retVal);
+                String url = normalizeUrl(reported == null ? PageContext.fetchUrl(driver) : reported);
+
+                Object result = scriptResult(retVal);
+                if (!(result instanceof Map) || !(((Map<?, ?>) result).get("elements") instanceof List)) {
+                    return null;
+                }
+                if (Boolean.TRUE.equals(((Map<?, ?>) result).get("partial"))) {
+                    LOG.fine(() -> "page learning budget ran out on " + url);
+                }
+
+                long now = System.currentTimeMillis();
+                LocatorCache cache = LocatorCache.get();
+                int learned = 0;
+
+                for (Object entry : (List<?>) ((Map<?, ?>) result).get("elements")) {
+                    List<?> element = (List<?>) entry;
+                    Fingerprint fingerprint = Fingerprint.fromScript(element.get(1), now);
+                    if (fingerprint == null || fingerprint.getStrategies().isEmpty()) {
+                        continue;
+                    }
+
+                    for (Object description : (List<?>) element.get(0)) {
+                        LocatorKey key = LocatorKey.of(url, String.valueOf(description));
+                        Fingerprint previous = cache.get(key);
+                        Fingerprint current = fingerprint.isPartial() ? fingerprint.withMissingFrom(previous) : fingerprint;
+                        cache.put(key, current.withHistoryFrom(previous));
+                        learned++;
+                    }
+                }
+
+                learnedPages.add(url);
+
+                int count = learned;
+                LOG.fine(() -> "learned " + count + " locators on " + url);
+                return url;
+
+            }
+
+        }
+        catch (NoSuchSessionException | UnreachableBrowserException e){
+            LOG.fine("session ended before the page was learned");
+        }
+        catch (Exception e){
+            LOG.log(Level.WARNING, "BetterWait could not learn the locators on the page", e);
+        }
+
+        return null;
+
+    }
+
+    /**
+     * @param normalizedUrl The page URL, already normalized.
+     * @return true if the page was fingerprinted in this run.
+     */
+    static boolean isPageLearned(String normalizedUrl){
+
+        return learnedPages.contains(normalizedUrl);
+
+    }
+
+    /**
+     * @return true if the page was fingerprinted in this run and the locator was learned since.
+     */
+    static boolean learnedWithPage(String normalizedUrl, String description){
+
+        return learnedPages.contains(normalizedUrl)
+                && LocatorCache.get().isWritten(LocatorKey.of(normalizedUrl, LocatorKey.describe(description)));
+
+    }
+
+    /**
+     * @return the fingerprint learned for the key, or null if there is none. Served from the
+     *         in-memory cache where possible, including cached misses.
+     */
+    public static Fingerprint backupLocators(LocatorKey key){
+
+        return LocatorCache.get().get(key);
+
+    }
+
+    /**
+     * @deprecated Store keys are built by {@link LocatorKey} and no longer need file-safe names.
+     */
+    @Deprecated
     public static String getFileSafeString(String toConvert){
 
-        String fileSafe = toConvert.replace(" ","_").replace(".","_dot_").replace(":","_colon_").replace("-","_hyphen_").replace("/","_slash_");
+        return toConvert.replace(" ","_").replace(".","_dot_").replace(":","_colon_").replace("-","_hyphen_").replace("/","_slash_");
+
+    }
+
+    /**
+     * Reduces a page URL to the form used in store keys, using the rules set by
+     * {@link #setUrlNormalizer(UrlNormalizer)}.
+     */
+    public static String normalizeUrl(String url){
+
+        return urlNormalizer.normalize(url);
+
+    }
+
+    static UrlNormalizer getUrlNormalizer(){
+
+        return urlNormalizer;
+
+    }
+
+    /**
+     * Sets the rules page URLs are normalized by before they become part of a store key. The
+     * default is {@link UrlNormalizer#defaults()}.
+     */
+    public static void setUrlNormalizer(UrlNormalizer normalizer){
 
-        System.out.println("file safe string: " + fileSafe);
+        urlNormalizer = normalizer;
 
-        return fileSafe;
+    }
+
+    /**
+     * Limits how long the learning script may spend on one element. When either limit is reached
+     * it returns the strategies found so far, most trusted first, and the rest are kept from the
+     * element's previous fingerprint. The script's defaults are 50 ms and 20000 DOM nodes.
+     *
+     * @param maxMillis time limit in milliseconds
+     * @param maxNodes how many DOM nodes the script may visit
+     */
+    public static void setLearningBudget(long maxMillis, int maxNodes){
+
+        checkArgument(maxMillis > 0 && maxNodes > 0, "Learning budget must be positive: %s ms, %s nodes", maxMillis, maxNodes);
+
+        Map<String, Object> budget = new HashMap<>();
+        budget.put("maxMillis", maxMillis);
+        budget.put("maxNodes", maxNodes);
+        learningBudget = Collections.unmodifiableMap(budget);
+
+    }
+
+    /**
+     * Limits how long fingerprinting a whole page with {@link #updatePageLocators(WebDriver)} may
+     * take, on top of the budget for each element. When either limit is reached the elements
+     * fingerprinted so far are kept. The script's defaults are 2000 ms and 500 elements.
+     *
+     * @param maxMillis time limit in milliseconds
+     * @param maxElements how many elements to fingerprint
+     */
+    public static void setPageLearningBudget(long maxMillis, int maxElements){
+
+        checkArgument(maxMillis > 0 && maxElements > 0, "Page learning budget must be positive: %s ms, %s elements", maxMillis, maxElements);
+
+        Map<String, Object> budget = new HashMap<>();
+        budget.put("maxMillis", maxMillis);
+        budget.put("maxElements", maxElements);
+        pageLearningBudget = Collections.unmodifiableMap(budget);
+
+    }
+
+    /**
+     * Supplies the locator scripts directly, e.g. preloaded or minified text, instead of reading
+     * {@code /locators.js} and {@code /TryLocators.js} from the classpath.
+     *
+     * @param generateLocators script that installs {@code window.__betterWait.generateLocators},
+     *        and {@code generatePageLocators} if pages are learned
+     * @param tryLocators script that installs {@code window.__betterWait.tryLocators}, and
+     *        {@code findEach} if batch waits should try backup locators in their lookup call
+     */
+    public static void useScripts(String generateLocators, String tryLocators){
+
+        scripts = new Scripts(generateLocators, tryLocators);
 
     }
 
@@ -75,26 +346,185 @@ public class Locators {
         boolean success = false;
 
         try{
-            JS_GENERATE_LOCATORS = IOUtils.toString(Locators.class.getClass().getResourceAsStream("/locators.js"), "UTF-8");
-            JS_TRY_LOCATORS = IOUtils.toString(Locators.class.getClass().getResourceAsStream("/TryLocators.js"), "UTF-8");
+            scripts();
             success = true;
         }
         catch (Exception e){
 
-            e.printStackTrace();
+            LOG.log(Level.WARNING, "BetterWait could not load its locator scripts", e);
         }
 
         return success;
 
     }
 
+    private static Scripts scripts() throws IOException {
+
+        Scripts loaded = scripts;
+        if (loaded == null) {
+            synchronized (Locators.class) {
+                if (scripts == null) {
+                    scripts = new Scripts(readResource("/locators.js"), readResource("/TryLocators.js"));
+                }
+                loaded = scripts;
+            }
+        }
+        return loaded;
+
+    }
+
+    static String readResource(String name) throws IOException {
+
+        try (InputStream in = Locators.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + name);
+            }
+            return IOUtils.toString(in, "UTF-8");
+        }
+
+    }
+
+    /**
+     * Runs one of the call stubs, installing the helpers first if this page does not have them yet.
+     */
+    private static Object callInstalled(JavascriptExecutor js, Scripts loaded, String call, Object... args){
+
+        Object result = js.executeScript(call, args);
+
+        if (NOT_INSTALLED.equals(result)) {
+            result = js.executeScript(loaded.install + call, args);
+        }
+
+        return result;
+
+    }
+
 
 
+    /**
+     * @param locators backup locators in the JSON form earlier versions stored
+     */
     public static WebElement tryAltLocators(String locators, WebDriver driver) {
 
-        WebElement element = null;
+        return tryLocators(Fingerprint.fromJson(locators, System.currentTimeMillis()), driver).element;
 
+    }
 
+    /**
+     * The element found by backup locators, or null if they found none, and the strategy that
+     * weighed most in choosing it.
+     */
+    static final class Recovery {
+
+        final LocatorKey key;
+        final Fingerprint fingerprint;
+        final WebElement element;
+        final String strategy;
+        // position of the strategy in the fingerprint, or -1 if the script did not say
+        final int index;
+        // the page the script ran on, or null if it did not report one
+        final String url;
+
+        Recovery(LocatorKey key, Fingerprint fingerprint, WebElement element, String strategy, int index, String url) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.element = element;
+            this.strategy = strategy;
+            this.index = index;
+            this.url = url;
+        }
+
+        Recovery forKey(LocatorKey key) {
+            return new Recovery(key, fingerprint, element, strategy, index, url);
+        }
+    }
+
+    /**
+     * Credits the strategy that recovered an element, so it ranks higher among equally trusted
+     * strategies.
+     */
+    static void recordHit(Recovery recovery) {
+
+        if (recovery.key != null && recovery.element != null
+                && recovery.index >= 0 && recovery.index < recovery.fingerprint.getStrategies().size()) {
+            LocatorCache.get().put(recovery.key, recovery.fingerprint.withHit(recovery.index));
+        }
+
+    }
+
+    /**
+     * Tries the backup locators stored for a locator on the driver's current page. The page is
+     * taken from {@link PageContext} and confirmed by the URL the recovery script reports, so a
+     * fallback usually costs one script call; a second runs only if the page changed since the
+     * driver was last seen.
+     *
+     * @param description The locator description, as built by {@link LocatorKey#describe(Object)}.
+     * @param recheckUrl Whether to read the driver's URL when nothing is stored for the remembered
+     *        page, in case it is stale. A wait passes true only on its first fallback, since the
+     *        page rarely changes between polls without a script or navigation reporting it.
+     * @return null if no backup locators are stored for the page, otherwise the attempt.
+     */
+    static Recovery recover(String description, WebDriver driver, boolean recheckUrl) {
+
+        String cached = PageContext.cachedUrl(driver);
+        String url = normalizeUrl(cached == null ? PageContext.fetchUrl(driver) : cached);
+        LocatorKey key = LocatorKey.of(url, description);
+        Fingerprint fingerprint = backupLocators(key);
+
+        if (fingerprint == null && cached != null && recheckUrl) {
+            // the remembered page may be stale
+            String current = normalizeUrl(PageContext.fetchUrl(driver));
+            if (!current.equals(url)) {
+                url = current;
+                key = LocatorKey.of(url, description);
+                fingerprint = backupLocators(key);
+            }
+        }
+
+        if (fingerprint == null) {
+            return null;
+        }
+
+        Fingerprint stored = fingerprint;
+        LOG.finest(() -> "got locators for " + description + ": " + stored);
+
+        Recovery recovery = tryLocators(stored, driver);
+
+        if (recovery.url != null && !normalizeUrl(recovery.url).equals(url)) {
+            // the page changed since the driver was last seen; its own backups are the right ones
+            key = LocatorKey.of(normalizeUrl(recovery.url), description);
+            Fingerprint current = backupLocators(key);
+            if (current == null) {
+                return null;
+            }
+            recovery = tryLocators(current, driver);
+        }
+
+        return recovery.forKey(key);
+
+    }
+
+    /**
+     * Tries only the strategy a redirect points to, without reading the store.
+     *
+     * @return the attempt, whose element is null if the strategy found none or the script ran on
+     *         a page other than the redirect's.
+     */
+    static Recovery follow(Redirects.Redirect redirect, WebDriver driver) {
+
+        Recovery recovery = tryLocators(redirect.fingerprint, driver).forKey(redirect.key);
+
+        if (recovery.url != null && !normalizeUrl(recovery.url).equals(redirect.key.getUrl())) {
+            return new Recovery(redirect.key, redirect.fingerprint, null, null, -1, recovery.url);
+        }
+
+        return recovery;
+
+    }
+
+    private static Recovery tryLocators(Fingerprint fingerprint, WebDriver driver) {
+
+        String url = null;
 
         try {
 
@@ -103,26 +533,113 @@ public class Locators {
                 JavascriptExecutor js = (JavascriptExecutor) driver;
 
 
-                System.out.println("JS_TRY_LOCATORS: ");
-                System.out.println(JS_TRY_LOCATORS);
+                Scripts loaded = scripts();
+                Object retVal = callInstalled(js, loaded, loaded.callTryLocators, fingerprint.toScriptArgument());
 
+                url = pageUrl(driver, retVal);
+                Object result = scriptResult(retVal);
 
+                Recovery recovery = recovered(null, fingerprint, result, url);
 
-                element = (WebElement) js.executeScript(JS_TRY_LOCATORS, locators);
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.fine("JS_TRY_LOCATORS retval: " + recovery.element);
+                }
 
-                System.out.println("JS_TRY_LOCATORS retval: ");
-                System.out.println(element);
+                return recovery;
 
             }
 
         }
         catch (Exception e){
-            System.out.println("BetterWait Error: ");
-            e.printStackTrace();
+            LOG.log(Level.WARNING, "BetterWait could not try backup locators", e);
+        }
+
+        return new Recovery(null, fingerprint, null, null, -1, url);
+
+    }
+
+    /**
+     * Reads what {@code tryLocators} returned: {@code [element, index of the strongest strategy]},
+     * or the element alone from scripts supplied through {@link #useScripts(String, String)}.
+     */
+    static Recovery recovered(LocatorKey key, Fingerprint fingerprint, Object result, String url) {
+
+        WebElement element = null;
+        String type = null;
+        int index = -1;
+
+        if (result instanceof List && !((List<?>) result).isEmpty()) {
+            List<?> found = (List<?>) result;
+            Object strategy = found.size() > 1 ? found.get(1) : null;
+            element = (WebElement) found.get(0);
+            if (strategy instanceof Number) {
+                index = ((Number) strategy).intValue();
+                List<Fingerprint.Strategy> strategies = fingerprint.getStrategies();
+                type = index >= 0 && index < strategies.size() ? strategies.get(index).getType() : null;
+            }
+            else {
+                type = strategy == null ? null : strategy.toString();
+            }
+        }
+        else if (result instanceof WebElement) {
+            element = (WebElement) result;
+        }
+
+        return new Recovery(key, fingerprint, element, type, index, url);
+
+    }
+
+    /**
+     * Looks up several locators in one script call, each by its in-page query and, where that
+     * finds nothing, by the backup strategies sent with it.
+     *
+     * @param queries One {@code [kind, selector, strategies]} list per locator, or null to skip
+     *        it. The strategies are {@link Fingerprint#toScriptArgument()}, or null for none.
+     * @return one result per query: the element, what {@code tryLocators} returned if the
+     *         strategies found it, or null. Null if the installed scripts cannot look up
+     *         several locators.
+     */
+    static List<?> findEach(WebDriver driver, List<?> queries){
+
+        if (!initJS()) {
+            return null;
         }
 
-        return element;
+        Scripts loaded;
+        try {
+            loaded = scripts();
+        }
+        catch (IOException e) {
+            return null;
+        }
+
+        Object retVal = callInstalled((JavascriptExecutor) driver, loaded, loaded.callFindEach, queries);
+        pageUrl(driver, retVal);
+        Object result = scriptResult(retVal);
+        return result instanceof List ? (List<?>) result : null;
+
+    }
+
+    /**
+     * Takes the page URL out of a stub's {@code [location.href, result]} and remembers it for the
+     * driver.
+     *
+     * @return the URL, or null if the script did not report one.
+     */
+    private static String pageUrl(WebDriver driver, Object retVal) {
+
+        if (retVal instanceof List && ((List<?>) retVal).size() == 2 && ((List<?>) retVal).get(0) instanceof String) {
+            String url = (String) ((List<?>) retVal).get(0);
+            PageContext.update(driver, url);
+            return url;
+        }
+        return null;
+
+    }
+
+    private static Object scriptResult(Object retVal) {
 
+        return retVal instanceof List && ((List<?>) retVal).size() == 2 ? ((List<?>) retVal).get(1) : null;
 
     }
 
@@ -0,0 +1,113 @@
+package com.sm1;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.ScriptTimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.Clock;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+
+/**
+ * Waits inside the page for an element to appear, or become visible, using a MutationObserver.
+ *
+ * <p>
+ * Each evaluation blocks in one asynchronous script call for at most {@link #SLICE_MILLIS}, or the
+ * rest of the wait if that is shorter. A miss throws {@link NoSuchElementException}, as
+ * {@code presenceOfElementLocated} does, so the wait's ignore rules and backup locator recovery
+ * apply unchanged between slices. The description matches the equivalent
+ * {@link org.openqa.selenium.support.ui.ExpectedConditions} so both modes share learned locators.
+ *
+ * <p>
+ * The session's script timeout is left alone. Slices end {@link #SCRIPT_TIMEOUT_MARGIN_MILLIS}
+ * before the script timeout the wait was told about, the W3C default of
+ * {@link #DEFAULT_SCRIPT_TIMEOUT_MILLIS} unless set otherwise; a slice cut short by the session
+ * anyway counts as a miss. So does a slice whose document unloads, since the page navigated. Any
+ * other script error, such as an invalid selector, ends the wait.
+ */
+final class ObservedElementLocated implements ExpectedCondition<WebElement> {
+
+    static final long SLICE_MILLIS = 5000;
+    static final long DEFAULT_SCRIPT_TIMEOUT_MILLIS = 30000;
+    static final long SCRIPT_TIMEOUT_MARGIN_MILLIS = 1000;
+
+    private static class Script {
+        static final String OBSERVE = load();
+
+        private static String load() {
+            try {
+                return Locators.readResource("/ObserveElement.js");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private final By by;
+    private final ByQuery query;
+    private final boolean visible;
+    private final Clock clock;
+    private final long deadline;
+    private final long maxSlice;
+
+    /**
+     * @param by The locator, used for messages and the learned locator key.
+     * @param query The in-page equivalent of the locator.
+     * @param visible Whether the element must also be visible.
+     * @param clock The wait's clock.
+     * @param timeoutMillis How long the whole wait lasts.
+     * @param scriptTimeoutMillis The session's script timeout.
+     */
+    ObservedElementLocated(By by, ByQuery query, boolean visible, Clock clock, long timeoutMillis,
+                           long scriptTimeoutMillis) {
+        this.by = by;
+        this.query = query;
+        this.visible = visible;
+        this.clock = clock;
+        this.deadline = clock.laterBy(timeoutMillis);
+        this.maxSlice = Math.min(SLICE_MILLIS, scriptTimeoutMillis - SCRIPT_TIMEOUT_MARGIN_MILLIS);
+    }
+
+    @Override
+    public WebElement apply(WebDriver driver) {
+
+        long slice = Math.max(0, Math.min(maxSlice, deadline - clock.now()));
+
+        Object result;
+        try {
+            result = ((JavascriptExecutor) driver).executeAsyncScript(Script.OBSERVE, query.kind, query.selector, visible, slice);
+        } catch (ScriptTimeoutException e) {
+            result = null;
+        } catch (JavascriptException e) {
+            if (!isUnload(e)) {
+                throw e;
+            }
+            // navigating away unloads the document the observer was attached to
+            result = null;
+        }
+
+        if (result instanceof WebElement) {
+            return (WebElement) result;
+        }
+        throw new NoSuchElementException("Cannot locate an element using " + by);
+    }
+
+    /**
+     * @return true if the script failed because its document unloaded, as browsers report it.
+     */
+    private static boolean isUnload(JavascriptException e) {
+        String message = e.getMessage();
+        return message != null && message.toLowerCase(Locale.ROOT).contains("unloaded");
+    }
+
+    @Override
+    public String toString() {
+        return visible ? "visibility of element located by " + by : "presence of element located by: " + by;
+    }
+}
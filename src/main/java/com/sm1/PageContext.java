@@ -0,0 +1,132 @@
+package com.sm1;
+
+import com.google.common.cache.CacheBuilder;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.support.events.AbstractWebDriverEventListener;
+import org.openqa.selenium.support.events.WebDriverEventListener;
+
+import java.util.Map;
+
+/**
+ * Remembers the page each driver was last seen on, so building a store key does not cost a
+ * {@code getCurrentUrl()} round trip.
+ *
+ * <p>
+ * The learning and recovery scripts return {@code location.href} along with their results, which
+ * keeps the remembered URL current as a side effect. A remembered URL can be stale after the page
+ * navigates; callers check it against the URL the next script returns. Drivers wrapped in an
+ * {@link org.openqa.selenium.support.events.EventFiringWebDriver} can also register
+ * {@link #listener()} to forget the URL as soon as anything that may navigate happens.
+ *
+ * <p>
+ * Drivers are held weakly and compared by identity; a wrapping driver shares its wrapped driver's
+ * entry.
+ */
+public final class PageContext {
+
+    private static final Map<WebDriver, String> URLS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .<WebDriver, String>build()
+            .asMap();
+
+    private static final WebDriverEventListener LISTENER = new AbstractWebDriverEventListener() {
+
+        @Override
+        public void afterNavigateTo(String url, WebDriver driver) {
+            invalidate(driver);
+        }
+
+        @Override
+        public void afterNavigateBack(WebDriver driver) {
+            invalidate(driver);
+        }
+
+        @Override
+        public void afterNavigateForward(WebDriver driver) {
+            invalidate(driver);
+        }
+
+        @Override
+        public void afterClickOn(WebElement element, WebDriver driver) {
+            invalidate(driver);
+        }
+
+        @Override
+        public void afterChangeValueOf(WebElement element, WebDriver driver, CharSequence[] keysToSend) {
+            // typing may submit a form
+            invalidate(driver);
+        }
+
+        @Override
+        public void afterAlertAccept(WebDriver driver) {
+            invalidate(driver);
+        }
+    };
+
+    private PageContext() {
+    }
+
+    /**
+     * @return a listener that forgets a driver's page whenever it navigates, clicks, types or
+     *         accepts an alert. Register it with an {@code EventFiringWebDriver}.
+     */
+    public static WebDriverEventListener listener() {
+        return LISTENER;
+    }
+
+    /**
+     * @return the URL the driver was last seen on, or null if it is not known. May be stale.
+     */
+    public static String cachedUrl(WebDriver driver) {
+        return URLS.get(unwrap(driver));
+    }
+
+    /**
+     * Asks the driver for its current URL and remembers it.
+     *
+     * @return the current URL.
+     */
+    public static String fetchUrl(WebDriver driver) {
+        String url = driver.getCurrentUrl();
+        update(driver, url);
+        return url;
+    }
+
+    /**
+     * @return the remembered URL, or the current one fetched from the driver if none is remembered.
+     */
+    public static String currentUrl(WebDriver driver) {
+        String url = cachedUrl(driver);
+        return url == null ? fetchUrl(driver) : url;
+    }
+
+    /**
+     * Remembers the URL a script reported for the driver's page.
+     *
+     * @param url The URL, or null to forget the page.
+     */
+    public static void update(WebDriver driver, String url) {
+        if (url == null) {
+            invalidate(driver);
+        } else {
+            URLS.put(unwrap(driver), url);
+        }
+    }
+
+    /**
+     * Forgets the driver's page, so the next lookup asks the driver.
+     */
+    public static void invalidate(WebDriver driver) {
+        URLS.remove(unwrap(driver));
+    }
+
+    static WebDriver unwrap(WebDriver driver) {
+        while (driver instanceof WrapsDriver && ((WrapsDriver) driver).getWrappedDriver() != null
+                && ((WrapsDriver) driver).getWrappedDriver() != driver) {
+            driver = ((WrapsDriver) driver).getWrappedDriver();
+        }
+        return driver;
+    }
+}
@@ -0,0 +1,138 @@
+package com.sm1;
+
+import org.openqa.selenium.support.ui.Duration;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The built-in {@link PollingStrategy} implementations.
+ */
+public final class PollingStrategies {
+
+    private PollingStrategies() {
+    }
+
+    /**
+     * @param duration The interval.
+     * @param unit The unit of time.
+     * @return a strategy that always sleeps for the same interval.
+     */
+    public static PollingStrategy fixed(long duration, TimeUnit unit) {
+        Duration interval = new Duration(duration, unit);
+        long millis = interval.in(TimeUnit.MILLISECONDS);
+
+        return new PollingStrategy() {
+            @Override
+            public long nextDelayMillis(String conditionKey, int attempt, long elapsedMillis) {
+                return millis;
+            }
+
+            @Override
+            public String toString() {
+                return interval.toString();
+            }
+        };
+    }
+
+    /**
+     * Doubles the delay after every evaluation, up to a cap, and spreads each delay randomly by
+     * the jitter fraction so parallel sessions do not poll in lockstep.
+     *
+     * @param initialMillis The first delay, in milliseconds.
+     * @param maxMillis The largest delay, in milliseconds.
+     * @param jitter The fraction, from 0.0 to 1.0, by which each delay may be shortened.
+     * @return an exponential backoff strategy.
+     */
+    public static PollingStrategy exponentialBackoff(long initialMillis, long maxMillis, double jitter) {
+        checkArgument(initialMillis > 0 && maxMillis >= initialMillis, "Need 0 < initial <= max");
+        checkArgument(jitter >= 0.0 && jitter <= 1.0, "Jitter must be between 0.0 and 1.0: %s", jitter);
+
+        return new PollingStrategy() {
+            @Override
+            public long nextDelayMillis(String conditionKey, int attempt, long elapsedMillis) {
+                long delay = initialMillis;
+                for (int i = 1; i < attempt && delay < maxMillis; i++) {
+                    delay = delay > maxMillis / 2 ? maxMillis : delay << 1;
+                }
+                if (jitter > 0.0) {
+                    delay -= (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+                }
+                return delay;
+            }
+
+            @Override
+            public String toString() {
+                return "exponential backoff from " + initialMillis + " to " + maxMillis + " ms";
+            }
+        };
+    }
+
+    /**
+     * Polls quickly at first, then settles at the cap. For example {@code fastStart(500, 10, 25, 50,
+     * 100)} sleeps 10, 25, 50 and 100 ms, then 500 ms from there on.
+     *
+     * @param capMillis The delay once the steps run out, in milliseconds.
+     * @param stepsMillis The first delays, in milliseconds.
+     * @return a fast-start strategy.
+     */
+    public static PollingStrategy fastStart(long capMillis, long... stepsMillis) {
+        long[] steps = stepsMillis.clone();
+
+        return new PollingStrategy() {
+            @Override
+            public long nextDelayMillis(String conditionKey, int attempt, long elapsedMillis) {
+                return attempt <= steps.length ? Math.min(steps[attempt - 1], capMillis) : capMillis;
+            }
+
+            @Override
+            public String toString() {
+                return "fast start " + Arrays.toString(steps) + " then " + capMillis + " ms";
+            }
+        };
+    }
+
+    /**
+     * Sleeps until just before the time this condition usually takes to be satisfied, then polls
+     * with the fallback strategy. The typical time is a moving average of past waits, kept in the
+     * {@link LocatorStore} so it carries over between runs.
+     *
+     * @param fallback The strategy used when there is no history, or once the expected time has
+     *        passed.
+     * @return a learned strategy.
+     */
+    public static PollingStrategy learned(PollingStrategy fallback) {
+        checkNotNull(fallback);
+
+        return new PollingStrategy() {
+            @Override
+            public long nextDelayMillis(String conditionKey, int attempt, long elapsedMillis) {
+                Long typical = LocatorStore.get().getTimeToSatisfy(conditionKey);
+                if (typical != null) {
+                    long target = typical * 9 / 10;
+                    if (elapsedMillis < target) {
+                        return target - elapsedMillis;
+                    }
+                }
+                return fallback.nextDelayMillis(conditionKey, attempt, elapsedMillis);
+            }
+
+            @Override
+            public void satisfied(String conditionKey, long elapsedMillis) {
+                LocatorStore store = LocatorStore.get();
+                Long typical = store.getTimeToSatisfy(conditionKey);
+                store.putTimeToSatisfy(conditionKey, typical == null ? elapsedMillis : (typical * 3 + elapsedMillis) / 4);
+                fallback.satisfied(conditionKey, elapsedMillis);
+            }
+
+            @Override
+            public String toString() {
+                return "learned schedule, else " + fallback;
+            }
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package com.sm1;
+
+/**
+ * Decides how long {@link BetterFluentWait} sleeps between evaluations of a condition.
+ *
+ * <p>
+ * One strategy instance serves every wait it is given to, possibly concurrently, so per-wait state
+ * is passed in rather than kept in the strategy. See {@link PollingStrategies} for the built-in
+ * schedules.
+ */
+public interface PollingStrategy {
+
+    /**
+     * @param conditionKey The description of the condition being waited for.
+     * @param attempt How many times the condition has been evaluated so far, starting at 1.
+     * @param elapsedMillis Time since the wait started, in milliseconds.
+     * @return how long to sleep before the next evaluation, in milliseconds.
+     */
+    long nextDelayMillis(String conditionKey, int attempt, long elapsedMillis);
+
+    /**
+     * Called when a wait using this strategy is satisfied.
+     *
+     * @param conditionKey The description of the condition that was waited for.
+     * @param elapsedMillis How long the wait took, in milliseconds.
+     */
+    default void satisfied(String conditionKey, long elapsedMillis) {
+    }
+}
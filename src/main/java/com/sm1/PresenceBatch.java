@@ -0,0 +1,181 @@
+package com.sm1;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Presence conditions for several locators that share one lookup script per poll.
+ *
+ * <p>
+ * Before each round of evaluations, {@link #refresh(WebDriver, List, WaitListener)} queries every
+ * locator that is still pending in a single {@code executeScript} call. A locator whose query finds
+ * nothing is tried by its stored backup locators in the same call, so recovery costs no script of
+ * its own; an element recovered this way is credited and redirected to as
+ * {@link BetterFluentWait#tryAltLocator(String, WebDriver)} would. Each condition then only reads
+ * its slot. Locators with no in-page equivalent are looked up with {@code findElements}, and
+ * recovered by the wait as usual. A miss is reported through {@link ElementProbe} rather than
+ * thrown.
+ */
+final class PresenceBatch {
+
+    // for scripts supplied through Locators.useScripts that cannot try backups in the same call
+    private static final String JS_FIND_ALL =
+            "var queries = arguments[0], found = [];" +
+            "for (var i = 0; i < queries.length; i++) {" +
+            "  var q = queries[i], element = null;" +
+            "  if (q) {" +
+            "    try {" +
+            "      element = q[0] == 'xpath' ?" +
+            "          document.evaluate(q[1], document, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue :" +
+            "          document.querySelector(q[1]);" +
+            "    } catch (error) {" +
+            "    }" +
+            "  }" +
+            "  found.push(element);" +
+            "}" +
+            "return found;";
+
+    private final List<By> locators;
+    private final List<String> descriptions = new ArrayList<>();
+    private final List<ByQuery> queries = new ArrayList<>();
+    private final Object[] found;
+    // whether the last lookup also tried the stored backup locators
+    private boolean backupsTried;
+
+    PresenceBatch(List<By> locators) {
+        this.locators = locators;
+        this.found = new Object[locators.size()];
+        for (By by : locators) {
+            descriptions.add(LocatorKey.describe(by));
+            queries.add(ByQuery.of(by));
+        }
+    }
+
+    /**
+     * @return one presence condition per locator, in order.
+     */
+    List<ExpectedCondition<WebElement>> conditions() {
+        List<ExpectedCondition<WebElement>> conditions = new ArrayList<>();
+        for (int i = 0; i < locators.size(); i++) {
+            conditions.add(new Slot(i));
+        }
+        return conditions;
+    }
+
+    /**
+     * Looks up every locator whose result is still null, falling back to its backup locators on
+     * the driver's page.
+     *
+     * @param listener Told about recovered locators, or null.
+     */
+    void refresh(WebDriver driver, List<?> results, WaitListener listener) {
+
+        String url = Locators.normalizeUrl(PageContext.currentUrl(driver));
+        Fingerprint[] backups = new Fingerprint[queries.size()];
+        List<List<Object>> pending = new ArrayList<>();
+        boolean any = false;
+
+        for (int i = 0; i < queries.size(); i++) {
+            ByQuery query = queries.get(i);
+            if (query != null && results.get(i) == null) {
+                backups[i] = Locators.backupLocators(LocatorKey.of(url, descriptions.get(i)));
+                pending.add(Arrays.asList(query.kind, query.selector,
+                        backups[i] == null ? null : backups[i].toScriptArgument()));
+                any = true;
+            } else {
+                pending.add(null);
+            }
+        }
+
+        Arrays.fill(found, null);
+        if (!any) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        List<?> elements = Locators.findEach(driver, pending);
+        backupsTried = elements != null;
+        if (elements == null) {
+            Object returned = ((JavascriptExecutor) driver).executeScript(JS_FIND_ALL, pending);
+            elements = returned instanceof List ? (List<?>) returned : Collections.emptyList();
+        }
+        long elapsed = System.nanoTime() - started;
+
+        // backups chosen for the remembered page are only trusted if the script ran there
+        String reported = PageContext.cachedUrl(driver);
+        boolean samePage = reported != null && Locators.normalizeUrl(reported).equals(url);
+
+        for (int i = 0; i < elements.size() && i < found.length; i++) {
+            Object element = elements.get(i);
+            if (!(element instanceof List)) {
+                found[i] = element;
+                if (element == null && backups[i] != null && backupsTried && listener != null) {
+                    listener.fallbackAttempted(descriptions.get(i), null, elapsed);
+                }
+                continue;
+            }
+
+            Locators.Recovery recovery = Locators.recovered(LocatorKey.of(url, descriptions.get(i)), backups[i], element, url);
+            if (samePage && recovery.element != null) {
+                Locators.recordHit(recovery);
+                Redirects.remember(driver, recovery);
+                found[i] = recovery.element;
+                if (listener != null) {
+                    listener.fallbackAttempted(descriptions.get(i),
+                            recovery.strategy == null ? "unknown" : recovery.strategy, elapsed);
+                }
+            }
+        }
+    }
+
+    private final class Slot implements ExpectedCondition<WebElement>, ElementProbe {
+
+        private final int index;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Object probe(WebDriver driver) {
+            if (queries.get(index) == null) {
+                List<WebElement> elements = driver.findElements(locators.get(index));
+                return elements.isEmpty() ? MISSING : elements.get(0);
+            }
+            return found[index] instanceof WebElement ? found[index] : MISSING;
+        }
+
+        @Override
+        public boolean triesBackups() {
+            return queries.get(index) != null && backupsTried;
+        }
+
+        @Override
+        public RuntimeException missing() {
+            return new NoSuchElementException("Cannot locate an element using " + locators.get(index));
+        }
+
+        @Override
+        public WebElement apply(WebDriver driver) {
+            Object result = probe(driver);
+            if (result == MISSING) {
+                throw missing();
+            }
+            return (WebElement) result;
+        }
+
+        @Override
+        public String toString() {
+            return "presence of element located by: " + locators.get(index);
+        }
+    }
+}
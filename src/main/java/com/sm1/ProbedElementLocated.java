@@ -0,0 +1,69 @@
+package com.sm1;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import java.util.List;
+
+/**
+ * Waits for an element to be present, or visible, looking it up with {@code findElements} so a
+ * miss does not throw inside the wait. Evaluated through {@link #apply(WebDriver)}, it behaves
+ * exactly like {@code presenceOfElementLocated} or {@code visibilityOfElementLocated}, and its
+ * description matches theirs so both share learned locators.
+ */
+final class ProbedElementLocated implements ExpectedCondition<WebElement>, ElementProbe {
+
+    private final By by;
+    private final boolean visible;
+
+    /**
+     * @param by The locator.
+     * @param visible Whether the element must also be visible.
+     */
+    ProbedElementLocated(By by, boolean visible) {
+        this.by = by;
+        this.visible = visible;
+    }
+
+    @Override
+    public Object probe(WebDriver driver) {
+
+        List<WebElement> found = driver.findElements(by);
+        if (found.isEmpty()) {
+            return MISSING;
+        }
+
+        WebElement element = found.get(0);
+        if (!visible) {
+            return element;
+        }
+        try {
+            return element.isDisplayed() ? element : null;
+        } catch (StaleElementReferenceException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public RuntimeException missing() {
+        return new NoSuchElementException("Cannot locate an element using " + by);
+    }
+
+    @Override
+    public WebElement apply(WebDriver driver) {
+        Object result = probe(driver);
+        if (result == MISSING) {
+            throw missing();
+        }
+        return (WebElement) result;
+    }
+
+    @Override
+    public String toString() {
+        return visible ? "visibility of element located by " + by : "presence of element located by: " + by;
+    }
+}
@@ -0,0 +1,89 @@
+package com.sm1;
+
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs repeated failures of the same key as a periodic summary rather than one line each.
+ *
+ * <p>
+ * The first failure for a key is logged in full. Later failures are only counted until the summary
+ * interval has passed, then one line reports how many there were. The interval is read from the
+ * {@code betterwait.log.summaryIntervalSeconds} system property and defaults to 60 seconds.
+ *
+ * <p>
+ * Windows are kept for at most {@code betterwait.log.maxKeys} (1000) keys, least recently failed
+ * first out, since keys include locator descriptions and a long run can fail on any number of
+ * them. A key whose window was dropped is logged in full again the next time it fails.
+ */
+final class RateLimitedLog {
+
+    static final String SUMMARY_INTERVAL_PROPERTY = "betterwait.log.summaryIntervalSeconds";
+    static final String MAX_KEYS_PROPERTY = "betterwait.log.maxKeys";
+
+    private final Logger log;
+    private final Level level;
+    private final long intervalMillis;
+    private final Map<String, Window> windows;
+
+    private static final class Window {
+        long startedAt;
+        int suppressed;
+
+        Window(long startedAt) {
+            this.startedAt = startedAt;
+        }
+    }
+
+    RateLimitedLog(Logger log, Level level) {
+        this(log, level, TimeUnit.SECONDS.toMillis(Long.getLong(SUMMARY_INTERVAL_PROPERTY, 60)),
+                Integer.getInteger(MAX_KEYS_PROPERTY, 1000));
+    }
+
+    RateLimitedLog(Logger log, Level level, long intervalMillis, int maxKeys) {
+        this.log = log;
+        this.level = level;
+        this.intervalMillis = intervalMillis;
+        this.windows = CacheBuilder.newBuilder()
+                .maximumSize(maxKeys)
+                .<String, Window>build()
+                .asMap();
+    }
+
+    /**
+     * @param key What failed, e.g. a locator description.
+     * @param message What to log the first time, prefixed by the key.
+     */
+    void failure(String key, String message) {
+
+        if (!log.isLoggable(level)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Window window = windows.get(key);
+
+        if (window == null && (window = windows.putIfAbsent(key, new Window(now))) == null) {
+            log.log(level, "{0}: {1}", new Object[]{key, message});
+            return;
+        }
+
+        int suppressed;
+        synchronized (window) {
+            if (now - window.startedAt < intervalMillis) {
+                window.suppressed++;
+                return;
+            }
+            suppressed = window.suppressed + 1;
+            window.suppressed = 0;
+            window.startedAt = now;
+        }
+
+        log.log(level, "{0}: {1} ({2} times in the last {3} s)",
+                new Object[]{key, message, suppressed, TimeUnit.MILLISECONDS.toSeconds(intervalMillis)});
+    }
+}
@@ -0,0 +1,106 @@
+package com.sm1;
+
+import com.google.common.cache.CacheBuilder;
+import org.openqa.selenium.WebDriver;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers, for each driver, the backup strategy that last recovered each broken locator, so
+ * later waits on it go straight to that strategy instead of failing the primary locator, reading
+ * the store and trying every backup first. A broken selector then costs one full recovery per
+ * run rather than one per poll.
+ *
+ * <p>
+ * The primary locator is evaluated again every {@code betterwait.redirect.recheckEvery} uses of a
+ * redirect (20 by default), and the redirect is dropped once it works. A redirect is also dropped
+ * when its strategy finds nothing. Setting the property to 0 turns redirects off.
+ *
+ * <p>
+ * Tables live for the run only. Drivers are held weakly, as in {@link PageContext}.
+ */
+final class Redirects {
+
+    static final String RECHECK_PROPERTY = "betterwait.redirect.recheckEvery";
+
+    private static final int RECHECK_EVERY = Integer.getInteger(RECHECK_PROPERTY, 20);
+
+    private static final Map<WebDriver, Map<LocatorKey, Redirect>> TABLES = CacheBuilder.newBuilder()
+            .weakKeys()
+            .<WebDriver, Map<LocatorKey, Redirect>>build()
+            .asMap();
+
+    /**
+     * A locator's winning backup strategy, on one page.
+     */
+    static final class Redirect {
+
+        final LocatorKey key;
+        // the winning strategy alone
+        final Fingerprint fingerprint;
+        private final AtomicInteger uses = new AtomicInteger();
+
+        Redirect(LocatorKey key, Fingerprint fingerprint) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * @return true if the primary locator should be evaluated this time instead.
+         */
+        boolean dueForRecheck() {
+            return uses.incrementAndGet() % RECHECK_EVERY == 0;
+        }
+    }
+
+    private Redirects() {
+    }
+
+    /**
+     * @param description The locator description, as built by {@link LocatorKey#describe(Object)}.
+     * @return the redirect for the locator on the driver's remembered page, or null if there is
+     *         none or the page is not known.
+     */
+    static Redirect find(WebDriver driver, String description) {
+
+        Map<LocatorKey, Redirect> table = TABLES.get(PageContext.unwrap(driver));
+        if (table == null || table.isEmpty()) {
+            return null;
+        }
+
+        String url = PageContext.cachedUrl(driver);
+        if (url == null) {
+            return null;
+        }
+
+        return table.get(LocatorKey.of(Locators.normalizeUrl(url), description));
+    }
+
+    /**
+     * Redirects later waits on the recovered locator to the strategy that found it.
+     */
+    static void remember(WebDriver driver, Locators.Recovery recovery) {
+
+        if (RECHECK_EVERY <= 0 || recovery.key == null || recovery.element == null
+                || recovery.index < 0 || recovery.index >= recovery.fingerprint.getStrategies().size()) {
+            return;
+        }
+
+        Fingerprint winner = new Fingerprint(recovery.fingerprint.getLearnedAt(),
+                Collections.singletonList(recovery.fingerprint.getStrategies().get(recovery.index)));
+
+        TABLES.computeIfAbsent(PageContext.unwrap(driver), d -> new ConcurrentHashMap<>())
+                .put(recovery.key, new Redirect(recovery.key, winner));
+    }
+
+    static void forget(WebDriver driver, Redirect redirect) {
+
+        Map<LocatorKey, Redirect> table = TABLES.get(PageContext.unwrap(driver));
+        if (table != null) {
+            table.remove(redirect.key, redirect);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.sm1;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a successful wait should learn its locator again.
+ *
+ * <p>
+ * A policy combines a TTL per locator and page, a sampling rate, and a "learn only if changed" option. The
+ * TTL and sampling rate avoid the learning script entirely; the TTL counts from when the stored
+ * backup locators were learned, so it holds across runs and forked JVMs. "Only if changed" still runs the script
+ * but skips the store write when the generated backup locators hash the same as last time.
+ * Policies are immutable; each {@code with} method returns a new policy.
+ */
+public final class RelearnPolicy {
+
+    private static final RelearnPolicy ALWAYS = new RelearnPolicy(0, 1.0, false);
+
+    private final long ttlMillis;
+    private final double sampleRate;
+    private final boolean onlyIfChanged;
+
+    private RelearnPolicy(long ttlMillis, double sampleRate, boolean onlyIfChanged) {
+        this.ttlMillis = ttlMillis;
+        this.sampleRate = sampleRate;
+        this.onlyIfChanged = onlyIfChanged;
+    }
+
+    /**
+     * @return a policy that learns on every successful wait.
+     */
+    public static RelearnPolicy always() {
+        return ALWAYS;
+    }
+
+    /**
+     * @param duration How long learned backup locators are considered fresh.
+     * @param unit The unit of time.
+     * @return a copy of this policy that skips locators learned within the duration.
+     */
+    public RelearnPolicy withTtl(long duration, TimeUnit unit) {
+        return new RelearnPolicy(unit.toMillis(duration), sampleRate, onlyIfChanged);
+    }
+
+    /**
+     * @param rate The fraction of eligible waits that learn, from 0.0 to 1.0.
+     * @return a copy of this policy that learns on a random sample of waits.
+     */
+    public RelearnPolicy withSampleRate(double rate) {
+        if (rate < 0.0 || rate > 1.0) {
+            throw new IllegalArgumentException("Sample rate must be between 0.0 and 1.0: " + rate);
+        }
+        return new RelearnPolicy(ttlMillis, rate, onlyIfChanged);
+    }
+
+    /**
+     * @param onlyIfChanged Whether to skip the store write when the backup locators did not change.
+     * @return a copy of this policy with the option set.
+     */
+    public RelearnPolicy withLearnOnlyIfChanged(boolean onlyIfChanged) {
+        return new RelearnPolicy(ttlMillis, sampleRate, onlyIfChanged);
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public boolean isLearnOnlyIfChanged() {
+        return onlyIfChanged;
+    }
+
+    /**
+     * The TTL is measured from when the stored backup locators were learned, by any run. The
+     * learner's record of this run's learning answers first, so a fresh locator costs no store
+     * read.
+     *
+     * @param key The locator's key on the page the wait ran on.
+     * @param learner Tracks when each locator was last learned in this run.
+     * @return true if the learning script should run for this wait.
+     */
+    boolean shouldLearn(LocatorKey key, LocatorLearner learner) {
+        if (ttlMillis > 0 && !learner.learnedWithin(key, ttlMillis)) {
+            Fingerprint stored = LocatorCache.get().get(key);
+            if (stored != null) {
+                learner.markLearned(key, stored.getLearnedAt());
+            }
+        }
+        if (learner.learnedWithin(key, ttlMillis)) {
+            return false;
+        }
+        return sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
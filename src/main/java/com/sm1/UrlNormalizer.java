@@ -0,0 +1,224 @@
+package com.sm1;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces page URLs to the form used in locator keys, so visits to the same page share learned
+ * locators.
+ *
+ * <p>
+ * By default the query and fragment are dropped, the scheme and host are lower-cased, and path
+ * segments that look like ids (numbers, UUIDs, long hex strings) are collapsed to {@code {id}}.
+ * Normalizers are immutable; each {@code with} method returns a new one.
+ */
+public final class UrlNormalizer {
+
+    public static final String ID_SEGMENT = "{id}";
+
+    private static final List<Pattern> DEFAULT_ID_SEGMENTS = Collections.unmodifiableList(Arrays.asList(
+            Pattern.compile("\\d+"),
+            Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}"),
+            Pattern.compile("[0-9a-fA-F]{16,}")));
+
+    private static final UrlNormalizer DEFAULTS = new UrlNormalizer(true, true, DEFAULT_ID_SEGMENTS);
+
+    private final boolean stripQuery;
+    private final boolean stripFragment;
+    private final List<Pattern> idSegments;
+
+    // the last URL normalized, since polls keep asking about the same page
+    private volatile Normalized last;
+
+    private static final class Normalized {
+        final String url;
+        final String normalized;
+
+        Normalized(String url, String normalized) {
+            this.url = url;
+            this.normalized = normalized;
+        }
+    }
+
+    private UrlNormalizer(boolean stripQuery, boolean stripFragment, List<Pattern> idSegments) {
+        this.stripQuery = stripQuery;
+        this.stripFragment = stripFragment;
+        this.idSegments = idSegments;
+    }
+
+    /**
+     * @return the default rules.
+     */
+    public static UrlNormalizer defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @param stripQuery Whether to drop the query string.
+     * @return a copy of this normalizer with the option set.
+     */
+    public UrlNormalizer withStripQuery(boolean stripQuery) {
+        return new UrlNormalizer(stripQuery, stripFragment, idSegments);
+    }
+
+    /**
+     * @param stripFragment Whether to drop the fragment.
+     * @return a copy of this normalizer with the option set.
+     */
+    public UrlNormalizer withStripFragment(boolean stripFragment) {
+        return new UrlNormalizer(stripQuery, stripFragment, idSegments);
+    }
+
+    /**
+     * @param pattern A pattern that whole path segments are matched against.
+     * @return a copy of this normalizer that also collapses segments matching the pattern.
+     */
+    public UrlNormalizer withIdSegment(Pattern pattern) {
+        List<Pattern> patterns = new ArrayList<>(idSegments);
+        patterns.add(pattern);
+        return new UrlNormalizer(stripQuery, stripFragment, Collections.unmodifiableList(patterns));
+    }
+
+    /**
+     * @return a copy of this normalizer that leaves every path segment as it is.
+     */
+    public UrlNormalizer withoutIdSegments() {
+        return new UrlNormalizer(stripQuery, stripFragment, Collections.<Pattern>emptyList());
+    }
+
+    /**
+     * @return the rules as JSON, as recorded in the store so offline tools normalize alike.
+     */
+    public String toJson() {
+        JsonArray patterns = new JsonArray();
+        for (Pattern pattern : idSegments) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("pattern", pattern.pattern());
+            entry.addProperty("flags", pattern.flags());
+            patterns.add(entry);
+        }
+        JsonObject rules = new JsonObject();
+        rules.addProperty("stripQuery", stripQuery);
+        rules.addProperty("stripFragment", stripFragment);
+        rules.add("idSegments", patterns);
+        return rules.toString();
+    }
+
+    /**
+     * @param json Rules written by {@link #toJson()}.
+     * @return the normalizer.
+     */
+    public static UrlNormalizer fromJson(String json) {
+        JsonObject rules = new JsonParser().parse(json).getAsJsonObject();
+        List<Pattern> patterns = new ArrayList<>();
+        for (JsonElement element : rules.getAsJsonArray("idSegments")) {
+            JsonObject entry = element.getAsJsonObject();
+            patterns.add(Pattern.compile(entry.get("pattern").getAsString(), entry.get("flags").getAsInt()));
+        }
+        return new UrlNormalizer(rules.get("stripQuery").getAsBoolean(), rules.get("stripFragment").getAsBoolean(),
+                Collections.unmodifiableList(patterns));
+    }
+
+    /**
+     * @param url A page URL, as returned by {@code getCurrentUrl()} or {@code location.href}.
+     * @return the normalized URL, or the empty string for null.
+     */
+    public String normalize(String url) {
+
+        if (url == null) {
+            return "";
+        }
+
+        Normalized memo = last;
+        if (memo != null && memo.url.equals(url)) {
+            return memo.normalized;
+        }
+
+        String normalized = normalizeUri(url);
+        last = new Normalized(url, normalized);
+        return normalized;
+    }
+
+    private String normalizeUri(String url) {
+
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return normalizeOpaque(url);
+        }
+
+        if (uri.isOpaque() || uri.getRawAuthority() == null) {
+            return normalizeOpaque(url);
+        }
+
+        StringBuilder normalized = new StringBuilder(url.length());
+        if (uri.getScheme() != null) {
+            normalized.append(uri.getScheme().toLowerCase(Locale.ROOT)).append("://");
+        }
+        normalized.append(uri.getRawAuthority().toLowerCase(Locale.ROOT));
+        appendPath(normalized, uri.getRawPath());
+        if (!stripQuery && uri.getRawQuery() != null) {
+            normalized.append('?').append(uri.getRawQuery());
+        }
+        if (!stripFragment && uri.getRawFragment() != null) {
+            normalized.append('#').append(uri.getRawFragment());
+        }
+        return normalized.toString();
+    }
+
+    private String normalizeOpaque(String url) {
+        String normalized = url;
+        int hash = normalized.indexOf('#');
+        if (stripFragment && hash >= 0) {
+            normalized = normalized.substring(0, hash);
+        }
+        int query = normalized.indexOf('?');
+        if (stripQuery && query >= 0) {
+            normalized = normalized.substring(0, query);
+        }
+        return normalized;
+    }
+
+    private void appendPath(StringBuilder normalized, String path) {
+
+        if (path == null || path.isEmpty()) {
+            return;
+        }
+
+        int start = 0;
+        while (start < path.length()) {
+            int slash = path.indexOf('/', start + 1);
+            int end = slash < 0 ? path.length() : slash;
+
+            // segment includes its leading slash
+            String segment = path.substring(start, end);
+            if (segment.length() > 1 && isId(segment.substring(1))) {
+                normalized.append('/').append(ID_SEGMENT);
+            } else {
+                normalized.append(segment);
+            }
+            start = end;
+        }
+    }
+
+    private boolean isId(String segment) {
+        for (Pattern pattern : idSegments) {
+            if (pattern.matcher(segment).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
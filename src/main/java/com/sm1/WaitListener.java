@@ -0,0 +1,66 @@
+package com.sm1;
+
+/**
+ * Receives events from waits, backup locator recovery, learning and the {@link LocatorStore}.
+ *
+ * <p>
+ * Every method has an empty default, so implementations override only what they need. Events are
+ * passed as primitives and strings the wait already holds, and nothing is timed unless a listener
+ * is set, so a wait without a listener does no extra work. Methods may be called concurrently from
+ * many waits, including for learning one wait queued and another ran. See {@link WaitMetrics} for
+ * the default implementation.
+ */
+public interface WaitListener {
+
+    /**
+     * @param conditionKey The description of the condition.
+     * @param polls How many times the condition was evaluated.
+     * @param elapsedMillis How long the wait took.
+     */
+    default void waitSatisfied(String conditionKey, int polls, long elapsedMillis) {
+    }
+
+    /**
+     * @param conditionKey The description of the condition.
+     * @param polls How many times the condition was evaluated.
+     * @param elapsedMillis How long the wait took.
+     */
+    default void waitTimedOut(String conditionKey, int polls, long elapsedMillis) {
+    }
+
+    /**
+     * Called after {@link #waitTimedOut(String, int, long)} for a wait its locator's circuit breaker
+     * cut short.
+     *
+     * @param conditionKey The description of the condition.
+     */
+    default void waitShortCircuited(String conditionKey) {
+    }
+
+    /**
+     * @param conditionKey The description of the condition whose locator failed.
+     * @param strategy The type of backup locator that recovered the element, or null if none did.
+     * @param elapsedNanos How long the attempt took, including the store read.
+     */
+    default void fallbackAttempted(String conditionKey, String strategy, long elapsedNanos) {
+    }
+
+    /**
+     * @param conditionKey The description of the condition whose element was learned.
+     * @param elapsedNanos How long generating and storing the backup locators took.
+     */
+    default void locatorLearned(String conditionKey, long elapsedNanos) {
+    }
+
+    /**
+     * @param elapsedNanos How long a {@link LocatorStore} read took.
+     */
+    default void storeRead(long elapsedNanos) {
+    }
+
+    /**
+     * @param elapsedNanos How long a {@link LocatorStore} write took.
+     */
+    default void storeWritten(long elapsedNanos) {
+    }
+}
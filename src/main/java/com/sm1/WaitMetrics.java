@@ -0,0 +1,192 @@
+package com.sm1;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The default {@link WaitListener}: counters and latency histograms for waits, recovery, learning
+ * and store access, exportable as a JSON report.
+ *
+ * <p>
+ * One instance is usually shared by every wait, and registered with the store too:
+ *
+ * <pre>
+ * WaitMetrics metrics = new WaitMetrics();
+ * LocatorStore.get().setListener(metrics);
+ * metrics.reportEvery(Paths.get("betterwait-metrics.json"), 30, TimeUnit.SECONDS);
+ * new BetterWebDriverWait(driver, 10).withListener(metrics).until(...);
+ * </pre>
+ *
+ * Times are in milliseconds for waits and microseconds for everything else.
+ */
+public class WaitMetrics implements WaitListener {
+
+    private static final Logger LOG = Logger.getLogger(WaitMetrics.class.getName());
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final LongAdder satisfied = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+    private final LongAdder fallbackAttempts = new LongAdder();
+    private final LongAdder recoveries = new LongAdder();
+    private final Map<String, LongAdder> recoveriesByStrategy = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram pollsPerWait = new LatencyHistogram();
+    private final LatencyHistogram timeToSatisfyMillis = new LatencyHistogram();
+    private final LatencyHistogram timeToTimeoutMillis = new LatencyHistogram();
+    private final LatencyHistogram fallbackMicros = new LatencyHistogram();
+    private final LatencyHistogram learnMicros = new LatencyHistogram();
+    private final LatencyHistogram storeReadMicros = new LatencyHistogram();
+    private final LatencyHistogram storeWriteMicros = new LatencyHistogram();
+
+    @Override
+    public void waitSatisfied(String conditionKey, int polls, long elapsedMillis) {
+        satisfied.increment();
+        pollsPerWait.record(polls);
+        timeToSatisfyMillis.record(elapsedMillis);
+    }
+
+    @Override
+    public void waitTimedOut(String conditionKey, int polls, long elapsedMillis) {
+        timedOut.increment();
+        pollsPerWait.record(polls);
+        timeToTimeoutMillis.record(elapsedMillis);
+    }
+
+    @Override
+    public void waitShortCircuited(String conditionKey) {
+        shortCircuited.increment();
+    }
+
+    @Override
+    public void fallbackAttempted(String conditionKey, String strategy, long elapsedNanos) {
+        fallbackAttempts.increment();
+        fallbackMicros.record(elapsedNanos / 1000);
+        if (strategy != null) {
+            recoveries.increment();
+            recoveriesByStrategy.computeIfAbsent(strategy, k -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public void locatorLearned(String conditionKey, long elapsedNanos) {
+        learnMicros.record(elapsedNanos / 1000);
+    }
+
+    @Override
+    public void storeRead(long elapsedNanos) {
+        storeReadMicros.record(elapsedNanos / 1000);
+    }
+
+    @Override
+    public void storeWritten(long elapsedNanos) {
+        storeWriteMicros.record(elapsedNanos / 1000);
+    }
+
+    /**
+     * @return the current counters and histogram summaries, as nested maps.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> waits = new LinkedHashMap<>();
+        waits.put("satisfied", satisfied.sum());
+        waits.put("timedOut", timedOut.sum());
+        waits.put("shortCircuited", shortCircuited.sum());
+        waits.put("pollsPerWait", pollsPerWait.summary());
+        waits.put("timeToSatisfyMillis", timeToSatisfyMillis.summary());
+        waits.put("timeToTimeoutMillis", timeToTimeoutMillis.summary());
+
+        long attempts = fallbackAttempts.sum();
+        Map<String, Object> byStrategy = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : recoveriesByStrategy.entrySet()) {
+            long hits = entry.getValue().sum();
+            Map<String, Object> strategy = new LinkedHashMap<>();
+            strategy.put("recoveries", hits);
+            strategy.put("hitRate", attempts == 0 ? 0.0 : (double) hits / attempts);
+            byStrategy.put(entry.getKey(), strategy);
+        }
+
+        Map<String, Object> fallback = new LinkedHashMap<>();
+        fallback.put("attempts", attempts);
+        fallback.put("recoveries", recoveries.sum());
+        fallback.put("hitRate", attempts == 0 ? 0.0 : (double) recoveries.sum() / attempts);
+        fallback.put("byStrategy", byStrategy);
+        fallback.put("latencyMicros", fallbackMicros.summary());
+
+        Map<String, Object> store = new LinkedHashMap<>();
+        store.put("readMicros", storeReadMicros.summary());
+        store.put("writeMicros", storeWriteMicros.summary());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("waits", waits);
+        report.put("fallback", fallback);
+        report.put("learningMicros", learnMicros.summary());
+        report.put("store", store);
+        return report;
+    }
+
+    /**
+     * @return the current snapshot as JSON.
+     */
+    public String toJson() {
+        return GSON.toJson(snapshot());
+    }
+
+    /**
+     * Writes the current snapshot to a file, replacing it atomically where the file system allows.
+     *
+     * @param file The report file.
+     */
+    public void writeJson(Path file) {
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, toJson().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Rewrites the report file periodically on a daemon thread, and once more at shutdown.
+     *
+     * @param file The report file.
+     * @param period How often to write it.
+     * @param unit The unit of time.
+     * @return a handle that stops the periodic writes when cancelled.
+     */
+    public ScheduledFuture<?> reportEvery(Path file, long period, TimeUnit unit) {
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "BetterWait-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> writeJson(file), "BetterWait-metrics-shutdown"));
+        return reporter.scheduleAtFixedRate(() -> {
+            try {
+                writeJson(file);
+            } catch (UncheckedIOException e) {
+                LOG.log(Level.WARNING, "Could not write wait metrics to " + file, e);
+            }
+        }, period, period, unit);
+    }
+}
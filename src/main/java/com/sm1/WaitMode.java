@@ -0,0 +1,21 @@
+package com.sm1;
+
+/**
+ * How {@link BetterWebDriverWait} waits for selector-based conditions such as
+ * {@link BetterWebDriverWait#untilPresent(org.openqa.selenium.By)}.
+ */
+public enum WaitMode {
+
+    /**
+     * Evaluate the condition, then sleep for the polling interval, until it holds.
+     */
+    POLL,
+
+    /**
+     * Install a MutationObserver in the page and resolve as soon as the element appears, within a
+     * single asynchronous script call. Locators with no in-page equivalent fall back to polling.
+     * Each script call ends before the session's script timeout; see
+     * {@link BetterWebDriverWait#withScriptTimeout(long, java.util.concurrent.TimeUnit)}.
+     */
+    OBSERVE
+}
@@ -0,0 +1,71 @@
+var kind = arguments[0];
+var selector = arguments[1];
+var visible = arguments[2];
+var timeout = arguments[3];
+var done = arguments[arguments.length - 1];
+
+// an invalid selector throws on the first call, failing the script instead of timing out
+function find() {
+
+  var element;
+
+  if (kind == 'xpath') {
+    element = document.evaluate(selector, document, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;
+  } else {
+    element = document.querySelector(selector);
+  }
+
+  if (element && visible && !isVisible(element)) {
+    return null;
+  }
+  return element;
+}
+
+function isVisible(element) {
+
+  if (!(element.offsetWidth || element.offsetHeight || element.getClientRects().length)) {
+    return false;
+  }
+
+  var style = window.getComputedStyle(element);
+  return style.visibility != 'hidden' && style.opacity !== '0';
+}
+
+
+var found = find();
+if (found) {
+  done(found);
+  return;
+}
+
+var finished = false;
+var observer = new MutationObserver(check);
+var timer = setTimeout(function () { finish(null); }, timeout);
+
+// stylesheets and transitions can change visibility without a DOM mutation
+var recheck = visible ? setInterval(check, 100) : null;
+
+function check() {
+  var element = find();
+  if (element) {
+    finish(element);
+  }
+}
+
+function finish(element) {
+
+  if (finished) {
+    return;
+  }
+  finished = true;
+
+  observer.disconnect();
+  clearTimeout(timer);
+  if (recheck) {
+    clearInterval(recheck);
+  }
+
+  done(element);
+}
+
+observer.observe(document.documentElement, {childList: true, subtree: true, attributes: visible});
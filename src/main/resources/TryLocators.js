@@ -1,4 +1,108 @@
+(function () {
 
+var betterWait = window.__betterWait = window.__betterWait || {};
 
+// the best candidate must score at least this much to be returned
+var MIN_SCORE = 0.35;
 
-return document.querySelector(JSON.parse(arguments[0])['nth-of-type']);
\ No newline at end of file
+
+function findAll(kind, selector) {
+
+  var found = [];
+
+  try {
+    if (kind == 'xpath') {
+      var snapshot = document.evaluate(selector, document, null, XPathResult.ORDERED_NODE_SNAPSHOT_TYPE, null);
+      for (var i = 0; i < snapshot.snapshotLength; i++) {
+        found.push(snapshot.snapshotItem(i));
+      }
+    } else {
+      var nodes = document.querySelectorAll(selector);
+      for (var j = 0; j < nodes.length; j++) {
+        found.push(nodes[j]);
+      }
+    }
+  } catch (error) {
+
+  }
+
+  return found;
+}
+
+// evaluates every [type, kind, selector, score] strategy and returns
+// [element, index of the strongest strategy that found it] for the element the strategies agree on
+// most, or null
+betterWait.tryLocators = function (strategies) {
+
+  var candidates = [];
+  var scores = [];
+  var strongest = [];
+  var shares = [];
+
+  for (var i = 0; i < strategies.length; i++) {
+
+    var found = findAll(strategies[i][1], strategies[i][2]);
+    var share = strategies[i][3] / found.length;
+
+    for (var j = 0; j < found.length; j++) {
+      var index = candidates.indexOf(found[j]);
+      if (index < 0) {
+        index = candidates.length;
+        candidates.push(found[j]);
+        scores.push(0);
+        strongest.push(-1);
+        shares.push(0);
+      }
+      scores[index] += share;
+      if (share > shares[index]) {
+        shares[index] = share;
+        strongest[index] = i;
+      }
+    }
+  }
+
+  var best = -1;
+  var bestScore = 0;
+
+  for (var k = 0; k < candidates.length; k++) {
+    if (scores[k] >= MIN_SCORE && scores[k] > bestScore) {
+      best = k;
+      bestScore = scores[k];
+    }
+  }
+
+  return best < 0 ? null : [candidates[best], strongest[best]];
+};
+
+function findFirst(kind, selector) {
+
+  try {
+    if (kind == 'xpath') {
+      return document.evaluate(selector, document, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;
+    }
+    return document.querySelector(selector);
+  } catch (error) {
+    return null;
+  }
+}
+
+// looks up each [kind, selector, strategies] query by its selector and, if that finds nothing and
+// strategies are given, as tryLocators does; returns, per query, the element, the tryLocators
+// result when the strategies found it, or null
+betterWait.findEach = function (queries) {
+
+  var found = [];
+
+  for (var i = 0; i < queries.length; i++) {
+    var q = queries[i];
+    var element = q ? findFirst(q[0], q[1]) : null;
+    if (!element && q && q[2]) {
+      element = betterWait.tryLocators(q[2]);
+    }
+    found.push(element);
+  }
+
+  return found;
+};
+
+})();
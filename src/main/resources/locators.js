@@ -1,204 +1,295 @@
+(function () {
 
+var betterWait = window.__betterWait = window.__betterWait || {};
 
+// how much each kind of backup locator is trusted when it matches exactly one element
+var WEIGHTS = {
+  'id': 0.95,
+  'data': 0.9,
+  'name': 0.8,
+  'anchored': 0.7,
+  'text': 0.6,
+  'tag-path': 0.4
+};
 
+var DATA_ATTRIBUTE_LIMIT = 3;
+var TEXT_LIMIT = 47;
 
+// a strategy matching more elements than this scores too low to be worth keeping
+var MAX_MATCHES = 8;
 
-function getContainsTextPath(element){
+// default budget for one element, used when the caller does not pass one
+var MAX_MILLIS = 50;
+var MAX_NODES = 20000;
 
-    if(!childHasText(element)){
+// elements a test is likely to look up, and the default budget for fingerprinting a whole page
+var PAGE_CANDIDATES = 'input, button, select, textarea, a[href], [id], [name]';
+var PAGE_MAX_MILLIS = 2000;
+var PAGE_MAX_ELEMENTS = 500;
+var LINK_TEXT_LIMIT = 100;
 
-            var content = element.innerText;
-            if(content){
-                content = content.trim();
-                    if(content.length > 0){
 
-                        var xpath = '//*[text()[contains(.,"' + content + '")]]';
-
-                        xpath = specify(xpath, element);
-
-                        return xpath;
-                    }
-            }
-    }
-    return '';
+function cssString(value) {
+  return '"' + value.replace(/\\/g, '\\\\').replace(/"/g, '\\"') + '"';
 }
 
-function specify(xpath, element){
-
-    var found = document.evaluate('count(' + root + xpathPart + ')', document, null, XPathResult.ANY_TYPE, null);
-    if(found.numberValue > 2) {
-
+function xpathString(value) {
+  if (value.indexOf('"') < 0) {
+    return '"' + value + '"';
+  }
+  if (value.indexOf("'") < 0) {
+    return "'" + value + "'";
+  }
+  return 'concat("' + value.split('"').join('", \'"\', "') + '")';
+}
 
+function countCss(selector) {
+  try {
+    return document.querySelectorAll(selector).length;
+  } catch (error) {
+    return 0;
+  }
+}
 
+// stops iterating once the count passes MAX_MATCHES
+function countXpath(xpath) {
+  try {
+    var result = document.evaluate(xpath, document, null, XPathResult.UNORDERED_NODE_ITERATOR_TYPE, null);
+    var count = 0;
+    while (count <= MAX_MATCHES && result.iterateNext()) {
+      count++;
     }
-
-    return xpath;
-
+    return count;
+  } catch (error) {
+    return 0;
+  }
 }
 
 
+// tracks the time and DOM nodes one fingerprint may spend
+function Budget(limits) {
+  this.deadline = Date.now() + ((limits && limits.maxMillis) || MAX_MILLIS);
+  this.nodes = (limits && limits.maxNodes) || MAX_NODES;
+  this.exhausted = false;
+}
 
+Budget.prototype.spend = function (nodes) {
+  this.nodes -= nodes;
+  if (this.nodes < 0 || Date.now() > this.deadline) {
+    this.exhausted = true;
+  }
+  return !this.exhausted;
+};
 
-function childHasText(element){
-
-  var children = element.childNodes;
-
-  var hasText = false;
-
-  for (var i = 0; i < children.length; i++) {
-
-    var content = children[i].innerText;
-    if(content){
-        content = content.trim();
-            if(content.length > 0){
-                hasText = true;
-            }
-    }
 
+function addStrategy(strategies, budget, type, kind, selector) {
 
+  if (!selector || budget.exhausted) {
+    return;
   }
 
+  var matches = kind == 'xpath' ? countXpath(selector) : countCss(selector);
+  budget.spend(1);
+  if (matches < 1 || matches > MAX_MATCHES) {
+    return;
+  }
 
-  return hasText;
+  strategies.push([type, kind, selector, WEIGHTS[type] / matches]);
+}
 
 
+function getIdSelector(element) {
+  if (element.id) {
+    return '[id=' + cssString(element.id) + ']';
+  }
 }
 
+function getNameSelector(element) {
+  var name = element.getAttribute('name');
+  if (name) {
+    return element.tagName + '[name=' + cssString(name) + ']';
+  }
+}
 
+function getDataSelectors(element) {
 
-function getTagNameOnlyPath(element) {
-
-  try {
+  var selectors = [];
+  var attributes = element.attributes;
 
-    if (element.tagName == 'BODY') {
-      return 'BODY';
+  for (var i = 0; i < attributes.length && selectors.length < DATA_ATTRIBUTE_LIMIT; i++) {
+    var attribute = attributes[i];
+    if (attribute.name.indexOf('data-') == 0 && attribute.value && attribute.value.length < 100) {
+      selectors.push(element.tagName + '[' + attribute.name + '=' + cssString(attribute.value) + ']');
     }
-
-    var path = getTagNameOnlyPath(element.parentNode);
-
-    return path + ' ' + element.tagName + getPreviousSiblings(element);
-  } catch (error) {
-
   }
+
+  return selectors;
 }
 
-function getPreviousSiblings(element) {
 
-  var siblings = [];
+// position among same-tag siblings, counted without collecting them; 0 if the budget ran out
+function nthOfType(element, budget) {
+
   var type = element.tagName;
-  while (element = element.previousSibling) {
-    if (element.tagName == type) {
-      siblings.push(element);
+  var n = 1;
+  var visited = 0;
+
+  for (var sibling = element.previousElementSibling; sibling; sibling = sibling.previousElementSibling) {
+    if (sibling.tagName == type) {
+      n++;
     }
+    visited++;
   }
 
-  var cssString = '';
-  cssString += ':nth-of-type(' + (siblings.length + 1) + ')';
-  return cssString;
+  return budget.spend(visited + 1) ? n : 0;
 }
 
+// builds the tag path from BODY, and the child-only path from the nearest ancestor with an id,
+// which tends to survive layout changes further up the page, in one walk up the tree
+function getPaths(element, budget) {
 
-var elementOfInterest;
-
-function getTextContainedPath(element) {
+  var tagPath = '';
+  var anchored = '';
+  var anchorFound = false;
 
-  console.log('in getTextContainedPath');
+  for (var node = element; node && node.tagName; node = node.parentElement) {
 
+    if (node.tagName == 'BODY') {
+      return {'tagPath': 'BODY' + tagPath, 'anchored': anchorFound ? anchored : null};
+    }
 
-  try {
-
-    if (!elementOfInterest) {
-      elementOfInterest = element;
+    if (node !== element && !anchorFound && node.id) {
+      anchored = '[id=' + cssString(node.id) + ']' + anchored;
+      anchorFound = true;
     }
 
-    if (element.tagName == 'BODY') {
-      return '/';
+    var n = nthOfType(node, budget);
+    if (n == 0) {
+      return {'tagPath': null, 'anchored': anchorFound ? anchored : null};
     }
 
-    var root = '/';
-    var xpathPart = getXpathPart(element);
+    var segment = node.tagName + ':nth-of-type(' + n + ')';
+    tagPath = ' ' + segment + tagPath;
+    if (!anchorFound) {
+      anchored = ' > ' + segment + anchored;
+    }
+  }
 
-    //var found = document.evaluate('count(' + root + xpathPart + ')', document, null, XPathResult.ANY_TYPE, null);
+  // not attached under BODY
+  return {'tagPath': null, 'anchored': null};
+}
 
-      path = root;
-      if (true){//found.numberValue > 2) {
-        path = getTextContainedPath(element.parentNode);
-      }
 
-      return path + xpathPart;
+function getOwnText(element) {
 
-    } catch (error) {
-        console.log(error);
+  var longest = '';
+  var child = element.firstChild;
 
+  while (child) {
+    if (child.nodeType == 3) {
+      var trimmed = child.data.replace(/\s+/g, ' ').trim();
+      if (trimmed.length > longest.length) {
+        longest = trimmed;
+      }
     }
+    child = child.nextSibling;
   }
 
-  function getXpathPart(element) {
-
-    var textContained = getTextContained(element);
+  return longest.substr(0, TEXT_LIMIT);
+}
 
-    if (textContained.length > 0) {
+function getTextContainedPath(element) {
 
-      return '/*[text()[contains(.,"' + textContained + '")]]';
-    } else {
-      return '/*';
-    }
+  var text = getOwnText(element);
+  if (text.length > 0) {
+    return '//' + element.tagName.toLowerCase() + '[text()[contains(normalize-space(.), ' + xpathString(text) + ')]]';
   }
+}
 
-  function getTextContained(element) {
 
-  console.log('in getTextContained');
+// returns {strategies: [[type, kind, selector, score], ...], partial: true if the budget ran out}
+// cheap attribute strategies come first and the document-wide text search last, so a partial
+// fingerprint keeps the most trusted ones
+betterWait.generateLocators = function (element, limits) {
 
+  var budget = new Budget(limits);
+  var strategies = [];
 
+  addStrategy(strategies, budget, 'id', 'css', getIdSelector(element));
+  addStrategy(strategies, budget, 'name', 'css', getNameSelector(element));
 
-    if (elementOfInterest === element) {
+  var dataSelectors = getDataSelectors(element);
+  for (var i = 0; i < dataSelectors.length; i++) {
+    addStrategy(strategies, budget, 'data', 'css', dataSelectors[i]);
+  }
 
-      return chooseBestSubstring(element.innerText);
+  if (!budget.exhausted) {
+    var paths = getPaths(element, budget);
+    addStrategy(strategies, budget, 'anchored', 'css', paths.anchored);
+    addStrategy(strategies, budget, 'tag-path', 'css', paths.tagPath);
+  }
 
-    } else {
+  addStrategy(strategies, budget, 'text', 'xpath', getTextContainedPath(element));
 
-      child = element.firstChild;
-        texts = [];
+  return {'strategies': strategies, 'partial': budget.exhausted};
+};
 
-      while (child) {
-        if (child.nodeType == 3) {
-          newText = child.data;
-          trimmed = newText.trim();
-          if(trimmed.length > 0){
-              texts.push(trimmed);
-          }
-        }
-        child = child.nextSibling;
-      }
 
-      var textString = texts.join('\\');
+// the By descriptions that find this element first, skipping any an earlier element already claimed
+function describeLookups(element, claimed) {
 
-        return textString;
+  var descriptions = [];
 
-      }
+  function claim(description) {
+    if (!claimed[description]) {
+      claimed[description] = true;
+      descriptions.push(description);
+    }
+  }
+
+  if (element.id) {
+    claim('By.id: ' + element.id);
+  }
 
+  var name = element.getAttribute('name');
+  if (name) {
+    claim('By.name: ' + name);
+  }
+
+  if (element.tagName == 'A') {
+    var text = element.textContent.replace(/\s+/g, ' ').trim();
+    if (text.length > 0 && text.length <= LINK_TEXT_LIMIT) {
+      claim('By.linkText: ' + text);
     }
+  }
+
+  return descriptions;
+}
 
-    function chooseBestSubstring(parentString) {
+// fingerprints every input, button, link and element with an id or name, in document order
+// returns {elements: [[[description, ...], fingerprint], ...], partial: true if the page budget ran out}
+betterWait.generatePageLocators = function (limits, pageLimits) {
 
-      console.log('in chooseBestSubstring');
+  var deadline = Date.now() + ((pageLimits && pageLimits.maxMillis) || PAGE_MAX_MILLIS);
+  var maxElements = (pageLimits && pageLimits.maxElements) || PAGE_MAX_ELEMENTS;
 
+  var candidates = document.querySelectorAll(PAGE_CANDIDATES);
+  var claimed = {};
+  var elements = [];
 
-      var subs = parentString.split('\\n');
-      var longSub = '';
-      for (var i = 0; i < subs.length; i++) {
-        if (subs[i].length > longSub.length) {
-          longSub = subs[i];
-        }
-      }
+  for (var i = 0; i < candidates.length; i++) {
 
-      var choice = longSub.substr(0, 47);
-      console.log('choice: ' + choice);
-      return choice;
+    if (elements.length >= maxElements || Date.now() > deadline) {
+      return {'elements': elements, 'partial': true};
     }
 
-var backupLocators = new Object();
-backupLocators['nth-of-type'] = getTagNameOnlyPath(arguments[0]);
+    var descriptions = describeLookups(candidates[i], claimed);
+    if (descriptions.length > 0) {
+      elements.push([descriptions, betterWait.generateLocators(candidates[i], limits)]);
+    }
+  }
 
-return JSON.stringify(backupLocators);
+  return {'elements': elements, 'partial': false};
+};
 
+})();
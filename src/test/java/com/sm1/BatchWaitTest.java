@@ -0,0 +1,134 @@
+package com.sm1;
+
+import com.sm1.fake.FakeBrowser;
+import com.sm1.fake.FakeElement;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchWaitTest {
+
+    private static final By SAVE = By.id("save");
+    private static final By CANCEL = By.id("cancel");
+    private static final By LATE = By.id("late");
+
+    /**
+     * Records every script call.
+     */
+    private static final class CountingBrowser extends FakeBrowser {
+
+        final List<String> scripts = new CopyOnWriteArrayList<>();
+
+        CountingBrowser(long renamedAfterMillis) {
+            super(url -> Arrays.asList(
+                    new FakeElement("save", "Save", "form", 1, 0, renamedAfterMillis),
+                    new FakeElement("cancel", "Cancel", "form", 2, 0, -1),
+                    new FakeElement("late", "Later", "form", 3, 300, -1)),
+                    0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public Object executeScript(String script, Object... args) {
+            scripts.add(script);
+            return super.executeScript(script, args);
+        }
+
+        long count(String marker) {
+            return scripts.stream().filter(script -> script.contains(marker)).count();
+        }
+    }
+
+    private static BetterFluentWait<WebDriver> waitFor(WebDriver driver, long timeoutMillis) {
+        return new BetterFluentWait<WebDriver>(driver)
+                .withTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .pollingEvery(50, TimeUnit.MILLISECONDS)
+                .ignoring(NoSuchElementException.class)
+                .withLearningMode(LearningMode.OFF);
+    }
+
+    @Test
+    public void allWaitsForTheSlowestAndAnyForTheFirst() {
+        CountingBrowser browser = new CountingBrowser(-1);
+        browser.get(TestPages.url("batch/plain"));
+
+        List<WebElement> any = waitFor(browser, 2000).untilAnyPresent(Arrays.asList(LATE, CANCEL));
+        assertNull(any.get(0));
+        assertEquals("cancel", any.get(1).getAttribute("id"));
+
+        List<WebElement> all = waitFor(browser, 2000).untilAllPresent(Arrays.asList(SAVE, LATE));
+        assertEquals("save", all.get(0).getAttribute("id"));
+        assertEquals("late", all.get(1).getAttribute("id"));
+    }
+
+    @Test
+    public void brokenLocatorsAreRecoveredInTheSameLookup() throws InterruptedException {
+        CountingBrowser browser = new CountingBrowser(100);
+        browser.get(TestPages.url("batch/broken"));
+        waitFor(browser, 1000).withLearningMode(LearningMode.SYNC).until(ExpectedConditions.presenceOfElementLocated(SAVE));
+        Thread.sleep(150);
+        browser.scripts.clear();
+
+        List<WebElement> found = waitFor(browser, 2000).untilAllPresent(Arrays.asList(SAVE, LATE));
+
+        assertEquals("save-renamed", found.get(0).getAttribute("id"));
+        assertEquals("late", found.get(1).getAttribute("id"));
+        // one lookup per poll, and no recovery script of its own for the renamed button
+        assertEquals(browser.scripts.size(), browser.count("bw.findEach"));
+        assertTrue(browser.scripts.size() > 1);
+    }
+
+    @Test
+    public void unrecoverableLocatorsCostNoScriptOfTheirOwn() {
+        String page = TestPages.url("batch/gone");
+        By gone = By.id("gone");
+        long now = System.currentTimeMillis();
+        LocatorCache.get().put(LocatorKey.of(Locators.normalizeUrl(page), gone.toString()), new Fingerprint(now,
+                Arrays.asList(new Fingerprint.Strategy("id", Fingerprint.CSS, "[id=\"gone\"]", 0.95f, now, 0))));
+        CountingBrowser browser = new CountingBrowser(-1);
+        browser.get(page);
+
+        try {
+            waitFor(browser, 300).untilAllPresent(Arrays.asList(SAVE, gone));
+            fail();
+        } catch (TimeoutException expected) {
+        }
+        assertEquals(0, browser.count("bw.tryLocators(arguments"));
+        assertTrue(browser.count("bw.findEach") > 1);
+    }
+
+    @Test
+    public void conditionsAreEvaluatedTogether() {
+        CountingBrowser browser = new CountingBrowser(-1);
+        browser.get(TestPages.url("batch/conditions"));
+
+        List<Function<? super WebDriver, Object>> conditions = Arrays.asList(
+                driver -> driver.findElements(LATE).isEmpty() ? null : "late",
+                driver -> driver.findElements(SAVE).isEmpty() ? null : "save");
+        assertEquals(Arrays.asList("late", "save"), waitFor(browser, 2000).untilAll(conditions));
+
+        try {
+            waitFor(browser, 100).untilAll(Arrays.asList(
+                    driver -> driver.findElement(By.id("missing")),
+                    driver -> driver.findElement(SAVE)));
+            fail();
+        } catch (TimeoutException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("all of"));
+            assertTrue(expected.getCause() instanceof NoSuchElementException);
+        }
+    }
+}
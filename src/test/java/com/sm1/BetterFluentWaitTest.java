@@ -0,0 +1,185 @@
+package com.sm1;
+
+import com.sm1.fake.FakeBrowser;
+import com.sm1.fake.FakeElement;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.events.EventFiringWebDriver;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BetterFluentWaitTest {
+
+    /**
+     * Shows a save button on every page and a back button on the second, and counts how often it
+     * is asked for its URL.
+     */
+    private static final class TwoPageBrowser extends FakeBrowser {
+
+        final AtomicInteger urlReads = new AtomicInteger();
+
+        TwoPageBrowser() {
+            super(url -> url.contains("second")
+                    ? Arrays.asList(new FakeElement("save", "Save", "form", 1, 0, -1),
+                            new FakeElement("back", "Back", "form", 2, 0, -1))
+                    : Collections.singletonList(new FakeElement("save", "Save", "form", 1, 0, -1)),
+                    0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public String getCurrentUrl() {
+            urlReads.incrementAndGet();
+            return super.getCurrentUrl();
+        }
+    }
+
+    private static BetterFluentWait<WebDriver> waitFor(WebDriver driver, long timeoutMillis) {
+        return new BetterFluentWait<WebDriver>(driver)
+                .withTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .pollingEvery(20, TimeUnit.MILLISECONDS)
+                .ignoring(NoSuchElementException.class);
+    }
+
+    private static LocatorKey key(String url, By by) {
+        return LocatorKey.of(Locators.normalizeUrl(url), by.toString());
+    }
+
+    /**
+     * Holds while the locator finds nothing, and describes itself the way a presence condition
+     * does.
+     */
+    private static final class Absent implements ExpectedCondition<Boolean> {
+
+        private final By by;
+
+        Absent(By by) {
+            this.by = by;
+        }
+
+        @Override
+        public Boolean apply(WebDriver driver) {
+            return driver.findElements(by).isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "presence of element located by: " + by;
+        }
+    }
+
+    @Test
+    public void redirectIsOnlyFollowedForSingleElementConditions() {
+        String page = TestPages.url("redirect");
+        By save = By.id("save");
+        // renamed as soon as the page loads, so only the name strategy finds it
+        FakeBrowser browser = new FakeBrowser(url -> Collections.singletonList(
+                new FakeElement("save", "Save", "form", 1, 0, 0)), 0, TimeUnit.MILLISECONDS);
+        browser.get(page);
+        long now = System.currentTimeMillis();
+        LocatorCache.get().put(key(page, save), new Fingerprint(now, Collections.singletonList(
+                new Fingerprint.Strategy("name", Fingerprint.CSS, "[name=\"save\"]", 0.8f, now, 0))));
+
+        // recovering the element leaves a redirect for the locator on this page
+        WebElement found = waitFor(browser, 1000).withLearningMode(LearningMode.OFF)
+                .until(ExpectedConditions.presenceOfElementLocated(save));
+        assertEquals("save-renamed", found.getAttribute("id"));
+        found = waitFor(browser, 1000).withLearningMode(LearningMode.OFF)
+                .until(ExpectedConditions.visibilityOfElementLocated(save));
+        assertEquals("save-renamed", found.getAttribute("id"));
+
+        // the primary locator finds nothing, which is what an invisibility wait is waiting for
+        assertTrue(waitFor(browser, 1000).withLearningMode(LearningMode.OFF)
+                .until(ExpectedConditions.invisibilityOfElementLocated(save)));
+        // as it is for a condition of our own that only reads like a presence condition
+        assertTrue(waitFor(browser, 1000).withLearningMode(LearningMode.OFF).until(new Absent(save)));
+    }
+
+    @Test
+    public void pageLearningTrustsTheRememberedPage() {
+        String page = TestPages.url("learn/first");
+        By save = By.id("save");
+        TwoPageBrowser browser = new TwoPageBrowser();
+        browser.get(page);
+
+        waitFor(browser, 1000).withPageLearning(true).until(ExpectedConditions.presenceOfElementLocated(save));
+        assertTrue(LocatorCache.get().isWritten(key(page, save)));
+
+        int reads = browser.urlReads.get();
+        for (int i = 0; i < 5; i++) {
+            waitFor(browser, 1000).withPageLearning(true).until(ExpectedConditions.presenceOfElementLocated(save));
+        }
+        assertEquals(reads, browser.urlReads.get());
+    }
+
+    @Test
+    public void pageLearningNoticesNavigationThroughTheListener() {
+        String first = TestPages.url("learn/first");
+        String second = TestPages.url("learn/second");
+        By save = By.id("save");
+        By back = By.id("back");
+        EventFiringWebDriver driver = new EventFiringWebDriver(new TwoPageBrowser());
+        driver.register(PageContext.listener());
+
+        driver.get(first);
+        waitFor(driver, 1000).withPageLearning(true).until(ExpectedConditions.presenceOfElementLocated(save));
+        assertTrue(LocatorCache.get().isWritten(key(first, save)));
+
+        // the save button was already learned on the first page, but the page has changed
+        driver.get(second);
+        waitFor(driver, 1000).withPageLearning(true).until(ExpectedConditions.presenceOfElementLocated(save));
+
+        assertTrue(LocatorCache.get().isWritten(key(second, save)));
+        assertTrue(LocatorCache.get().isWritten(key(second, back)));
+        assertFalse(LocatorCache.get().isWritten(key(first, back)));
+    }
+
+    @Test
+    public void breakerOnlyAppliesToThePageItOpenedOn() {
+        String broken = TestPages.url("breaker/broken");
+        String working = TestPages.url("breaker/working");
+        By missing = By.id("missing");
+        long appearsAfter = CircuitBreakers.probeMillis() + 500;
+        FakeBrowser browser = new FakeBrowser(url -> url.contains("working")
+                ? Collections.singletonList(new FakeElement("missing", "Missing", "form", 1, appearsAfter, -1))
+                : Collections.<FakeElement>emptyList(),
+                0, TimeUnit.MILLISECONDS);
+
+        browser.get(broken);
+        for (int i = 0; i < 3; i++) {
+            try {
+                waitFor(browser, 100).withLearningMode(LearningMode.OFF).until(ExpectedConditions.presenceOfElementLocated(missing));
+                fail();
+            } catch (TimeoutException expected) {
+            }
+        }
+
+        long started = System.nanoTime();
+        try {
+            waitFor(browser, 10000).withLearningMode(LearningMode.OFF).until(ExpectedConditions.presenceOfElementLocated(missing));
+            fail();
+        } catch (TimeoutException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("short-circuited"));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < CircuitBreakers.probeMillis() + 1000);
+
+        // the remembered URL is still the broken page's, but the breaker must not cut this wait short
+        browser.get(working);
+        WebElement found = waitFor(browser, 10000).withLearningMode(LearningMode.OFF)
+                .until(ExpectedConditions.presenceOfElementLocated(missing));
+        assertEquals("missing", found.getAttribute("id"));
+    }
+}
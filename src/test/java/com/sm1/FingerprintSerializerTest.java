@@ -0,0 +1,88 @@
+package com.sm1;
+
+import org.junit.Test;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintSerializerTest {
+
+    private static Fingerprint sample(boolean partial) {
+        return new Fingerprint(1500000000000L, Arrays.asList(
+                new Fingerprint.Strategy("id", Fingerprint.CSS, "[id=\"save\"]", 0.95f, 1500000000000L, 3),
+                new Fingerprint.Strategy("text", Fingerprint.XPATH, "//button[text()=\"Save\"]", 0.6f, 1400000000000L, 0),
+                new Fingerprint.Strategy("aria", Fingerprint.CSS, "[aria-label=\"Save\"]", 0.5f, 1500000000000L, 7)),
+                partial);
+    }
+
+    private static Fingerprint roundTrip(Fingerprint fingerprint) throws IOException {
+        DataOutput2 out = new DataOutput2();
+        FingerprintSerializer.INSTANCE.serialize(out, fingerprint);
+        return FingerprintSerializer.INSTANCE.deserialize(new DataInput2.ByteArray(out.copyBytes()), out.pos);
+    }
+
+    private static void assertSameStrategies(List<Fingerprint.Strategy> expected, List<Fingerprint.Strategy> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Fingerprint.Strategy e = expected.get(i);
+            Fingerprint.Strategy a = actual.get(i);
+            assertEquals(e.getType(), a.getType());
+            assertEquals(e.getKind(), a.getKind());
+            assertEquals(e.getSelector(), a.getSelector());
+            assertEquals(e.getConfidence(), a.getConfidence(), 0f);
+            assertEquals(e.getLearnedAt(), a.getLearnedAt());
+            assertEquals(e.getHits(), a.getHits());
+        }
+    }
+
+    @Test
+    public void roundTripsCurrentFormat() throws IOException {
+        Fingerprint fingerprint = sample(false);
+        Fingerprint read = roundTrip(fingerprint);
+
+        assertEquals(fingerprint, read);
+        assertFalse(read.isPartial());
+        assertSameStrategies(fingerprint.getStrategies(), read.getStrategies());
+    }
+
+    @Test
+    public void roundTripsPartialFlag() throws IOException {
+        Fingerprint read = roundTrip(sample(true));
+
+        assertTrue(read.isPartial());
+    }
+
+    @Test
+    public void roundTripsSelectorsLongerThanModifiedUtf8Allows() throws IOException {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 70000) {
+            text.append("Sav\u00e9 \u4fdd\u5b58 ");
+        }
+        String selector = "//p[text()=\"" + text + "\"]";
+        Fingerprint fingerprint = new Fingerprint(1500000000000L, Arrays.asList(
+                new Fingerprint.Strategy("text", Fingerprint.XPATH, selector, 0.6f, 1500000000000L, 0),
+                new Fingerprint.Strategy("\u00e9tiquette", Fingerprint.CSS, "[aria-label=\"Sav\u00e9\"]", 0.5f, 1500000000000L, 1)));
+
+        Fingerprint read = roundTrip(fingerprint);
+
+        assertSameStrategies(fingerprint.getStrategies(), read.getStrategies());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNewerFormats() throws IOException {
+        DataOutput2 out = new DataOutput2();
+        out.writeByte(FingerprintSerializer.FORMAT_VERSION + 1);
+        out.writeByte(0);
+        out.packLong(0);
+        out.packInt(0);
+
+        FingerprintSerializer.INSTANCE.deserialize(new DataInput2.ByteArray(out.copyBytes()), out.pos);
+    }
+}
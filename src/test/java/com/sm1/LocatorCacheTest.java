@@ -0,0 +1,91 @@
+package com.sm1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocatorCacheTest {
+
+    private static final int SEGMENTS = 16;
+
+    private static Fingerprint fingerprint(String selector) {
+        return new Fingerprint(System.currentTimeMillis(), Collections.singletonList(
+                new Fingerprint.Strategy("id", Fingerprint.CSS, selector, 0.95f, System.currentTimeMillis(), 0)));
+    }
+
+    private static List<LocatorKey> keys(String test, int count) {
+        List<LocatorKey> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(LocatorKey.of(TestPages.url(test), "By.id: element-" + i));
+        }
+        return keys;
+    }
+
+    private static String selector(int i) {
+        return "[id=\"element-" + i + "\"]";
+    }
+
+    private static int resident(LocatorCache cache, List<LocatorKey> keys) {
+        int count = 0;
+        for (LocatorKey key : keys) {
+            if (cache.getIfCached(key) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void evictsBeyondMaxEntries() {
+        LocatorCache cache = new LocatorCache(LocatorStore.get(), LocatorSnapshot.get(), SEGMENTS, Long.MAX_VALUE);
+        List<LocatorKey> keys = keys("entries", 200);
+        for (int i = 0; i < keys.size(); i++) {
+            cache.put(keys.get(i), fingerprint(selector(i)));
+        }
+        // written entries stay in the dirty map until they reach the store
+        cache.flush();
+
+        assertTrue(resident(cache, keys) <= SEGMENTS);
+        LocatorKey last = keys.get(keys.size() - 1);
+        assertNotNull(cache.getIfCached(last));
+        // evicted entries are read back from the store
+        assertEquals(selector(0), cache.get(keys.get(0)).getStrategies().get(0).getSelector());
+    }
+
+    @Test
+    public void evictsBeyondMaxChars() {
+        String selector = "[id=\"a-fairly-long-element-id\"]";
+        long weight = fingerprint(selector).weight();
+        LocatorCache cache = new LocatorCache(LocatorStore.get(), LocatorSnapshot.get(), Integer.MAX_VALUE, SEGMENTS * weight);
+        List<LocatorKey> keys = keys("chars", 200);
+        for (LocatorKey key : keys) {
+            cache.put(key, fingerprint(selector));
+        }
+        cache.flush();
+
+        assertTrue(resident(cache, keys) <= SEGMENTS);
+        assertNotNull(cache.getIfCached(keys.get(keys.size() - 1)));
+    }
+
+    @Test
+    public void cachedMissGivesWayToWrite() {
+        LocatorCache cache = new LocatorCache(LocatorStore.get(), LocatorSnapshot.get(), 1000, Long.MAX_VALUE);
+        LocatorKey key = LocatorKey.of(TestPages.url("miss"), "By.id: later");
+
+        assertNull(cache.get(key));
+        assertNull(cache.getIfCached(key));
+
+        Fingerprint learned = fingerprint("[id=\"later\"]");
+        cache.put(key, learned);
+
+        assertEquals(learned, cache.get(key));
+        assertTrue(cache.isWritten(key));
+    }
+}
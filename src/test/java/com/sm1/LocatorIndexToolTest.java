@@ -0,0 +1,111 @@
+package com.sm1;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mapdb.DB;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class LocatorIndexToolTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final LocatorKey ORDERS = LocatorKey.of("https://app.example.com/orders", "By.id: save");
+    private static final LocatorKey ORDERS_TAB = LocatorKey.of("https://app.example.com/orders?tab=1", "By.id: save");
+    private static final LocatorKey CUSTOMERS = LocatorKey.of("https://app.example.com/customers", "By.id: save");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Fingerprint fingerprint(String selector, long learnedAt) {
+        return new Fingerprint(learnedAt, Collections.singletonList(
+                new Fingerprint.Strategy("id", Fingerprint.CSS, selector, 0.95f, learnedAt, 0)));
+    }
+
+    private static void write(Path file, LocatorKey key, Fingerprint fingerprint) {
+        DB db = LocatorStore.openDb(file.toString());
+        try {
+            LocatorStore.fingerprints(db).put(key.getId(), fingerprint);
+            LocatorStore.keys(db).put(key.getId(), LocatorStore.encodeKey(key));
+            db.commit();
+        } finally {
+            db.close();
+        }
+    }
+
+    private static Fingerprint read(Path file, LocatorKey key) {
+        DB db = LocatorStore.openDb(file.toString());
+        try {
+            return LocatorStore.fingerprints(db).get(key.getId());
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void compactDropsExpiredEntriesAndMergesUrlVariants() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("locators.db");
+        long now = System.currentTimeMillis();
+        write(file, ORDERS, fingerprint("[id=\"save\"]", now - DAY));
+        write(file, ORDERS_TAB, fingerprint("[id=\"save-tab\"]", now));
+        write(file, CUSTOMERS, fingerprint("[id=\"save\"]", now - 100 * DAY));
+
+        LocatorIndexTool.Result result = LocatorIndexTool.compact(file, 30 * DAY,
+                UrlNormalizer.defaults().withStripQuery(true));
+
+        assertEquals(1, result.getKept());
+        assertEquals(1, result.getExpired());
+        assertEquals(1, result.getMerged());
+        // the most recently learned variant wins
+        assertEquals("[id=\"save-tab\"]", read(file, ORDERS).getStrategies().get(0).getSelector());
+        assertNull(read(file, CUSTOMERS));
+        assertFalse(Files.exists(file.resolveSibling("locators.db.compacting")));
+    }
+
+    @Test
+    public void mergeFoldsShardsIntoTheStoreAndDeletesThem() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("locators.db");
+        Path shard = folder.getRoot().toPath().resolve(LocatorStore.shardFile("locators.db", "1"));
+        long now = System.currentTimeMillis();
+        write(file, ORDERS, fingerprint("[id=\"save\"]", now - DAY));
+        write(shard, ORDERS, fingerprint("[id=\"save-new\"]", now));
+        write(shard, CUSTOMERS, fingerprint("[id=\"save\"]", now));
+
+        assertEquals(Collections.singletonList(shard), LocatorIndexTool.findShards(file));
+        LocatorIndexTool.Result result = LocatorIndexTool.merge(file, LocatorIndexTool.findShards(file));
+
+        assertEquals(2, result.getKept());
+        assertEquals(1, result.getMerged());
+        assertEquals("[id=\"save-new\"]", read(file, ORDERS).getStrategies().get(0).getSelector());
+        assertNotNull(read(file, CUSTOMERS));
+        assertFalse(Files.exists(shard));
+    }
+
+    @Test
+    public void exportWritesASnapshotOfTheRecentEntries() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("locators.db");
+        Path snapshot = folder.getRoot().toPath().resolve("locators.snapshot");
+        long now = System.currentTimeMillis();
+        write(file, ORDERS, fingerprint("[id=\"save\"]", now));
+        write(file, CUSTOMERS, fingerprint("[id=\"save\"]", now - 100 * DAY));
+
+        LocatorIndexTool.Result result = LocatorIndexTool.export(file, snapshot, 30 * DAY);
+
+        assertEquals(1, result.getKept());
+        assertEquals(1, result.getExpired());
+        LocatorSnapshot exported = LocatorSnapshot.open(snapshot);
+        assertEquals(1, exported.size());
+        assertEquals(read(file, ORDERS), exported.get(ORDERS));
+        assertNull(exported.get(CUSTOMERS));
+    }
+}
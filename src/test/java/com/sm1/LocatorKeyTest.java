@@ -0,0 +1,87 @@
+package com.sm1;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocatorKeyTest {
+
+    private static final By SAVE = By.id("save");
+
+    @Test
+    public void singleElementConditionsShareTheLocatorKey() {
+        assertEquals("By.id: save", LocatorKey.describe(SAVE));
+        assertEquals("By.id: save", LocatorKey.describe(ExpectedConditions.presenceOfElementLocated(SAVE)));
+        assertEquals("By.id: save", LocatorKey.describe(ExpectedConditions.visibilityOfElementLocated(SAVE)));
+        assertTrue(LocatorKey.isElementLocator(LocatorKey.describe(ExpectedConditions.presenceOfElementLocated(SAVE))));
+    }
+
+    @Test
+    public void otherConditionsOnTheLocatorKeepTheirOwnKeys() {
+        String invisible = LocatorKey.describe(ExpectedConditions.invisibilityOfElementLocated(SAVE));
+        String clickable = LocatorKey.describe(ExpectedConditions.elementToBeClickable(SAVE));
+        String text = LocatorKey.describe(ExpectedConditions.textToBePresentInElementLocated(SAVE, "Save"));
+        String all = LocatorKey.describe(ExpectedConditions.presenceOfAllElementsLocatedBy(SAVE));
+
+        for (String description : new String[]{invisible, clickable, text, all}) {
+            assertNotEquals("By.id: save", description);
+            assertFalse(description, LocatorKey.isElementLocator(description));
+        }
+        assertNotEquals(invisible, clickable);
+    }
+
+    @Test
+    public void currentValueIsNotPartOfTheKey() {
+        Object before = new Described("value to be \"v\". Current value: \"\"");
+        Object after = new Described("value to be \"v\". Current value: \"x\"");
+
+        assertEquals("value to be \"v\"", LocatorKey.describe(before));
+        assertEquals(LocatorKey.describe(before), LocatorKey.describe(after));
+    }
+
+    @Test
+    public void lambdaAddressAndIdentityHashAreNotPartOfTheKey() {
+        assertEquals("com.example.Steps$$Lambda$14",
+                LocatorKey.describe(new Described("com.example.Steps$$Lambda$14/0x0000000800c03000@6d06d69c")));
+        assertEquals("com.example.Steps$$Lambda$14",
+                LocatorKey.describe(new Described("com.example.Steps$$Lambda$14/1831932724@6d06d69c")));
+        assertEquals("com.example.Steps$$Lambda",
+                LocatorKey.describe(new Described("com.example.Steps$$Lambda/0x0000000800c03000@6d06d69c")));
+    }
+
+    @Test
+    public void pathsThatLookLikeAddressesAreKept() {
+        assertEquals("text to be present at /menu/cafe",
+                LocatorKey.describe(new Described("text to be present at /menu/cafe")));
+        assertEquals("url to contain /orders/1234",
+                LocatorKey.describe(new Described("url to contain /orders/1234")));
+    }
+
+    @Test
+    public void idDependsOnPageAndLocator() {
+        LocatorKey key = LocatorKey.of("https://app.example.com/orders/", "By.id: save");
+
+        assertEquals(key.getId(), LocatorKey.of("https://app.example.com/orders/", "By.id: save").getId());
+        assertNotEquals(key.getId(), LocatorKey.of("https://app.example.com/customers/", "By.id: save").getId());
+        assertNotEquals(key.getId(), LocatorKey.of("https://app.example.com/orders/", "By.id: cancel").getId());
+    }
+
+    private static final class Described {
+
+        private final String description;
+
+        Described(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.sm1;
+
+import com.sm1.fake.FakeBrowser;
+import com.sm1.fake.FakeElement;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocatorLearnerTest {
+
+    private static final By SAVE = By.id("save");
+    private static final By LATE = By.id("late");
+
+    /**
+     * Records the thread each learning script runs on.
+     */
+    private static final class RecordingBrowser extends FakeBrowser {
+
+        final List<Thread> learnedOn = new CopyOnWriteArrayList<>();
+
+        RecordingBrowser() {
+            super(url -> Arrays.asList(
+                    new FakeElement("save", "Save", "form", 1, 0, -1),
+                    new FakeElement("late", "Later", "form", 2, 150, -1)),
+                    0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public Object executeScript(String script, Object... args) {
+            Object result = super.executeScript(script, args);
+            // the first call on a page only finds the helpers missing
+            if (script.contains("bw.generateLocators") && result instanceof List) {
+                learnedOn.add(Thread.currentThread());
+            }
+            return result;
+        }
+    }
+
+    private static BetterFluentWait<WebDriver> waitFor(WebDriver driver) {
+        return new BetterFluentWait<WebDriver>(driver)
+                .withTimeout(2, TimeUnit.SECONDS)
+                .pollingEvery(50, TimeUnit.MILLISECONDS)
+                .ignoring(NoSuchElementException.class)
+                .withLearningMode(LearningMode.ASYNC);
+    }
+
+    private static LocatorKey key(String url, By by) {
+        return LocatorKey.of(Locators.normalizeUrl(url), by.toString());
+    }
+
+    @Test
+    public void queuedLearningRunsOnTheWaitingThreadAtItsNextWait() {
+        String page = TestPages.url("learner/sleep");
+        RecordingBrowser browser = new RecordingBrowser();
+        browser.get(page);
+
+        waitFor(browser).until(ExpectedConditions.presenceOfElementLocated(SAVE));
+        assertTrue(browser.learnedOn.isEmpty());
+        assertFalse(LocatorCache.get().isWritten(key(page, SAVE)));
+
+        // the next wait on the driver learns the save button before it looks for the late one
+        waitFor(browser).until(ExpectedConditions.presenceOfElementLocated(LATE));
+        assertEquals(Arrays.asList(Thread.currentThread()), browser.learnedOn);
+        assertTrue(LocatorCache.get().isWritten(key(page, SAVE)));
+        assertFalse(LocatorCache.get().isWritten(key(page, LATE)));
+
+        LocatorLearner.get().drain(browser);
+        assertTrue(LocatorCache.get().isWritten(key(page, LATE)));
+        assertEquals(2, browser.learnedOn.size());
+    }
+
+    @Test
+    public void tasksAreCoalescedAndKeptPerDriver() {
+        String page = TestPages.url("learner/coalesce");
+        RecordingBrowser first = new RecordingBrowser();
+        RecordingBrowser second = new RecordingBrowser();
+        first.get(page);
+        second.get(page);
+
+        WebElement save = first.findElement(SAVE);
+        LocatorLearner learner = LocatorLearner.get();
+        learner.submit(save, SAVE.toString(), first, false, null);
+        learner.submit(save, SAVE.toString(), first, false, null);
+        learner.submit(second.findElement(SAVE), SAVE.toString(), second, false, null);
+
+        learner.drain(first);
+        assertEquals(1, first.learnedOn.size());
+        assertTrue(second.learnedOn.isEmpty());
+
+        learner.discard(second);
+        learner.drain(second);
+        assertTrue(second.learnedOn.isEmpty());
+    }
+}
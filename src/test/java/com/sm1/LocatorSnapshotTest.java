@@ -0,0 +1,61 @@
+package com.sm1;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocatorSnapshotTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Fingerprint fingerprint(String id) {
+        return new Fingerprint(1500000000000L, Collections.singletonList(
+                new Fingerprint.Strategy("id", Fingerprint.CSS, "[id=\"" + id + "\"]", 0.95f, 1500000000000L, 0)));
+    }
+
+    @Test
+    public void findsWrittenFingerprints() throws IOException {
+        LocatorKey save = LocatorKey.of("https://app.example.com/orders/", "By.id: save");
+        LocatorKey cancel = LocatorKey.of("https://app.example.com/orders/", "By.id: cancel");
+        LocatorKey other = LocatorKey.of("https://app.example.com/orders/", "By.id: other");
+
+        SortedMap<Long, Fingerprint> fingerprints = new TreeMap<>();
+        fingerprints.put(save.getId(), fingerprint("save"));
+        fingerprints.put(cancel.getId(), fingerprint("cancel"));
+        // ids are signed, so both ends of the range are searched
+        fingerprints.put(Long.MIN_VALUE, fingerprint("lowest"));
+        fingerprints.put(Long.MAX_VALUE, fingerprint("highest"));
+
+        Path file = folder.getRoot().toPath().resolve("locators.snapshot");
+        LocatorSnapshot.write(fingerprints, file);
+        LocatorSnapshot snapshot = LocatorSnapshot.open(file);
+
+        assertEquals(4, snapshot.size());
+        assertEquals(fingerprint("save"), snapshot.get(save));
+        assertEquals(fingerprint("cancel"), snapshot.get(cancel));
+        assertEquals(fingerprint("lowest"), snapshot.get(Long.MIN_VALUE));
+        assertEquals(fingerprint("highest"), snapshot.get(Long.MAX_VALUE));
+        assertNull(snapshot.get(other));
+    }
+
+    @Test
+    public void emptySnapshotMisses() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("empty.snapshot");
+        LocatorSnapshot.write(new TreeMap<>(), file);
+        LocatorSnapshot snapshot = LocatorSnapshot.open(file);
+
+        assertTrue(snapshot.isEmpty());
+        assertNull(snapshot.get(LocatorKey.of("https://app.example.com/orders/", "By.id: save")));
+    }
+}
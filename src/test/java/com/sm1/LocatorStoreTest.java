@@ -0,0 +1,107 @@
+package com.sm1;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mapdb.DB;
+
+import java.io.IOException;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocatorStoreTest {
+
+    private static final LocatorKey ORDERS = LocatorKey.of("https://app.example.com/orders", "By.id: save");
+    private static final LocatorKey CUSTOMERS = LocatorKey.of("https://app.example.com/customers", "By.id: save");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Fingerprint fingerprint(String selector) {
+        long now = System.currentTimeMillis();
+        return new Fingerprint(now, Collections.singletonList(
+                new Fingerprint.Strategy("id", Fingerprint.CSS, selector, 0.95f, now, 0)));
+    }
+
+    private static Fingerprint read(Path file, LocatorKey key) {
+        DB db = LocatorStore.openDb(file.toString());
+        try {
+            return LocatorStore.fingerprints(db).get(key.getId());
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void aLockedFileCannotBeLockedAgainOrReadUntilReleased() {
+        String file = folder.getRoot().toPath().resolve("locators.db").toString();
+
+        FileLock lock = LocatorStore.lock(file);
+        assertNotNull(lock);
+        assertNull(LocatorStore.lock(file));
+        assertNull(LocatorStore.lockShared(file));
+        LocatorStore.unlock(lock);
+
+        FileLock shared = LocatorStore.lockShared(file);
+        assertNotNull(shared);
+        assertNull(LocatorStore.lock(file));
+        LocatorStore.unlock(shared);
+
+        lock = LocatorStore.lock(file);
+        assertNotNull(lock);
+        LocatorStore.unlock(lock);
+    }
+
+    @Test
+    public void shardFilesAreNamedAfterTheStore() {
+        assertEquals("BetterWait_Locators.shard-3.db", LocatorStore.shardFile("BetterWait_Locators.db", "3"));
+        assertEquals("locators.shard-pid-42", LocatorStore.shardFile("locators", "pid-42"));
+    }
+
+    @Test
+    public void closeCommitsWhatIsPendingAndReleasesTheFile() {
+        Path file = folder.getRoot().toPath().resolve("locators.db");
+        LocatorStore store = new LocatorStore(file.toString(), null);
+        store.put(ORDERS, fingerprint("[id=\"save\"]"));
+        // well before the first periodic commit
+        store.close();
+        store.close();
+
+        assertEquals("[id=\"save\"]", read(file, ORDERS).getStrategies().get(0).getSelector());
+        FileLock lock = LocatorStore.lock(file.toString());
+        assertNotNull(lock);
+        LocatorStore.unlock(lock);
+    }
+
+    @Test
+    public void aShardReadsThroughToTheStoreAndMergesBackIntoIt() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("locators.db");
+        LocatorStore main = new LocatorStore(file.toString(), null);
+        main.put(ORDERS, fingerprint("[id=\"save\"]"));
+        main.close();
+
+        LocatorStore shard = new LocatorStore(file.toString(), "1");
+        assertNotNull(shard.get(ORDERS));
+        shard.put(CUSTOMERS, fingerprint("[id=\"save-customer\"]"));
+        // a shard holds the main store for reading, so it cannot be written meanwhile
+        assertNull(LocatorStore.lock(file.toString()));
+        shard.close();
+
+        Path shardFile = file.resolveSibling(LocatorStore.shardFile("locators.db", "1"));
+        assertTrue(Files.exists(shardFile));
+        assertNull(read(file, CUSTOMERS));
+
+        LocatorIndexTool.merge(file, LocatorIndexTool.findShards(file));
+        assertNotNull(read(file, ORDERS));
+        assertEquals("[id=\"save-customer\"]", read(file, CUSTOMERS).getStrategies().get(0).getSelector());
+        assertFalse(Files.exists(shardFile));
+    }
+}
@@ -0,0 +1,63 @@
+package com.sm1;
+
+import com.sm1.fake.FakeBrowser;
+import com.sm1.fake.FakeElement;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LocatorsTest {
+
+    /**
+     * Counts how often the driver is asked for its URL.
+     */
+    private static final class UrlCountingBrowser extends FakeBrowser {
+
+        final AtomicInteger urlReads = new AtomicInteger();
+
+        UrlCountingBrowser() {
+            super(url -> Collections.singletonList(new FakeElement("save", "Save", "form", 1, 0, -1)),
+                    0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public String getCurrentUrl() {
+            urlReads.incrementAndGet();
+            return super.getCurrentUrl();
+        }
+    }
+
+    @Test
+    public void fallbackWithNothingStoredReadsTheUrlAtMostOncePerWait() {
+        UrlCountingBrowser browser = new UrlCountingBrowser();
+        String page = TestPages.url("locators/unstored");
+        browser.get(page);
+        PageContext.fetchUrl(browser);
+        // opens the store, so the wait gets to poll more than once
+        LocatorCache.get().get(LocatorKey.of(Locators.normalizeUrl(page), "By.id: missing"));
+        browser.urlReads.set(0);
+
+        try {
+            new BetterFluentWait<WebDriver>(browser)
+                    .withTimeout(400, TimeUnit.MILLISECONDS)
+                    .pollingEvery(20, TimeUnit.MILLISECONDS)
+                    .ignoring(NoSuchElementException.class)
+                    .until(ExpectedConditions.presenceOfElementLocated(By.id("missing")));
+            fail();
+        } catch (TimeoutException expected) {
+        }
+
+        // once by the first fallback, and once as the timeout confirms the page for the breaker
+        assertTrue(String.valueOf(browser.urlReads), browser.urlReads.get() <= 2);
+    }
+}
@@ -0,0 +1,106 @@
+package com.sm1;
+
+import com.sm1.fake.FakeBrowser;
+import com.sm1.fake.FakeElement;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.WebElement;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ObservedElementLocatedTest {
+
+    private static final By LATE = By.id("late");
+
+    /**
+     * Records what each observe script call threw.
+     */
+    private static class ObservingBrowser extends FakeBrowser {
+
+        final List<RuntimeException> thrown = new CopyOnWriteArrayList<>();
+
+        ObservingBrowser(long appearsAfterMillis) {
+            super(url -> Collections.singletonList(new FakeElement("late", "Later", "form", 1, appearsAfterMillis, -1)),
+                    0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public Object executeAsyncScript(String script, Object... args) {
+            try {
+                return super.executeAsyncScript(script, args);
+            } catch (RuntimeException e) {
+                thrown.add(e);
+                throw e;
+            }
+        }
+    }
+
+    private static BetterWebDriverWait observe(FakeBrowser browser) {
+        BetterWebDriverWait wait = new BetterWebDriverWait(browser, 10, 10);
+        wait.withLearningMode(LearningMode.OFF);
+        return wait.withWaitMode(WaitMode.OBSERVE);
+    }
+
+    @Test
+    public void slicesEndBeforeTheSessionScriptTimeoutWithoutChangingIt() {
+        ObservingBrowser browser = new ObservingBrowser(1500);
+        browser.manage().timeouts().setScriptTimeout(2, TimeUnit.SECONDS);
+        browser.get(TestPages.url("observe/timeout"));
+
+        WebElement found = observe(browser).withScriptTimeout(2, TimeUnit.SECONDS).untilPresent(LATE);
+
+        assertEquals("late", found.getAttribute("id"));
+        assertTrue(browser.thrown.toString(), browser.thrown.isEmpty());
+        assertEquals(2000, browser.getScriptTimeoutMillis());
+    }
+
+    @Test
+    public void unloadingThePageCountsAsAMiss() throws InterruptedException {
+        ObservingBrowser browser = new ObservingBrowser(300);
+        browser.get(TestPages.url("observe/unload"));
+
+        Thread reload = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            browser.navigate().refresh();
+        });
+        reload.start();
+        try {
+            assertEquals("late", observe(browser).untilPresent(LATE).getAttribute("id"));
+        } finally {
+            reload.join();
+        }
+        assertEquals(1, browser.thrown.size());
+    }
+
+    @Test
+    public void scriptErrorsEndTheWait() {
+        FakeBrowser browser = new ObservingBrowser(0) {
+            @Override
+            public Object executeAsyncScript(String script, Object... args) {
+                throw new JavascriptException("invalid selector: An invalid or illegal selector was specified");
+            }
+        };
+        browser.get(TestPages.url("observe/invalid"));
+
+        long started = System.nanoTime();
+        try {
+            observe(browser).untilPresent(LATE);
+            fail();
+        } catch (RuntimeException expected) {
+            assertTrue(String.valueOf(expected), expected.getCause() instanceof JavascriptException);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1000);
+    }
+}
@@ -0,0 +1,107 @@
+package com.sm1;
+
+import org.junit.Test;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.support.ui.Clock;
+import org.openqa.selenium.support.ui.Duration;
+import org.openqa.selenium.support.ui.Sleeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PollingStrategiesTest {
+
+    /**
+     * A clock that only moves when the wait sleeps, and records each sleep.
+     */
+    private static final class ManualTime implements Clock, Sleeper {
+
+        long now;
+        final List<Long> sleeps = new ArrayList<>();
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public long laterBy(long durationInMillis) {
+            return now + durationInMillis;
+        }
+
+        @Override
+        public boolean isNowBefore(long endInMillis) {
+            return now < endInMillis;
+        }
+
+        @Override
+        public void sleep(Duration duration) {
+            long millis = duration.in(TimeUnit.MILLISECONDS);
+            sleeps.add(millis);
+            now += millis;
+        }
+    }
+
+    private static List<Long> delays(PollingStrategy strategy, int attempts) {
+        List<Long> delays = new ArrayList<>();
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            delays.add(strategy.nextDelayMillis("condition", attempt, 0));
+        }
+        return delays;
+    }
+
+    @Test
+    public void exponentialBackoffDoublesUpToTheCap() {
+        assertEquals(Arrays.asList(10L, 20L, 40L, 80L, 100L, 100L),
+                delays(PollingStrategies.exponentialBackoff(10, 100, 0.0), 6));
+
+        for (long delay : delays(PollingStrategies.exponentialBackoff(100, 100, 0.5), 20)) {
+            assertTrue(String.valueOf(delay), delay > 50 && delay <= 100);
+        }
+    }
+
+    @Test
+    public void fastStartSettlesAtTheCap() {
+        assertEquals(Arrays.asList(10L, 25L, 50L, 50L, 50L),
+                delays(PollingStrategies.fastStart(50, 10, 25, 100), 5));
+    }
+
+    @Test
+    public void learnedScheduleSleepsUntilTheUsualTime() {
+        String key = "learned " + TestPages.url("polling");
+        PollingStrategy learned = PollingStrategies.learned(PollingStrategies.fixed(20, TimeUnit.MILLISECONDS));
+
+        assertEquals(20, learned.nextDelayMillis(key, 1, 0));
+
+        learned.satisfied(key, 1000);
+        assertEquals(900, learned.nextDelayMillis(key, 1, 0));
+        assertEquals(400, learned.nextDelayMillis(key, 2, 500));
+        assertEquals(20, learned.nextDelayMillis(key, 3, 950));
+
+        // a moving average, so one fast wait does not reset it
+        learned.satisfied(key, 200);
+        assertEquals(720, learned.nextDelayMillis(key, 1, 0));
+    }
+
+    @Test
+    public void sleepsNeverRunPastTheTimeout() {
+        ManualTime time = new ManualTime();
+        BetterFluentWait<String> wait = new BetterFluentWait<>("input", time, time)
+                .withTimeout(100, TimeUnit.MILLISECONDS)
+                .pollingWith(PollingStrategies.fastStart(50, 10, 25));
+
+        try {
+            wait.until(input -> null);
+            fail();
+        } catch (TimeoutException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("fast start [10, 25] then 50 ms"));
+        }
+        assertEquals(Arrays.asList(10L, 25L, 50L, 15L), time.sleeps);
+    }
+}
@@ -0,0 +1,99 @@
+package com.sm1;
+
+import com.sm1.fake.FakeBrowser;
+import com.sm1.fake.FakeElement;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebElement;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProbedElementLocatedTest {
+
+    /**
+     * Counts the lookups that throw on a miss and the ones that do not.
+     */
+    private static final class CountingBrowser extends FakeBrowser {
+
+        final AtomicInteger throwingLookups = new AtomicInteger();
+        final AtomicInteger lookups = new AtomicInteger();
+
+        CountingBrowser() {
+            super(url -> Arrays.asList(
+                    new FakeElement("save", "Save", "form", 1, 0, 0),
+                    new FakeElement("late", "Later", "form", 2, 200, -1)),
+                    0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public WebElement findElement(By by) {
+            throwingLookups.incrementAndGet();
+            return super.findElement(by);
+        }
+
+        @Override
+        public List<WebElement> findElements(By by) {
+            lookups.incrementAndGet();
+            return super.findElements(by);
+        }
+    }
+
+    private static BetterWebDriverWait waitFor(CountingBrowser browser, long timeOutInSeconds) {
+        BetterWebDriverWait wait = new BetterWebDriverWait(browser, timeOutInSeconds, 20);
+        wait.withLearningMode(LearningMode.OFF);
+        return wait;
+    }
+
+    @Test
+    public void missesAreProbedWithoutThrowingLookups() {
+        CountingBrowser browser = new CountingBrowser();
+        browser.get(TestPages.url("probe/late"));
+
+        WebElement found = waitFor(browser, 5).untilPresent(By.id("late"));
+
+        assertEquals("late", found.getAttribute("id"));
+        assertTrue(String.valueOf(browser.lookups), browser.lookups.get() > 1);
+        assertEquals(0, browser.throwingLookups.get());
+    }
+
+    @Test
+    public void aProbedMissStillRecoversThroughBackupLocators() {
+        String page = TestPages.url("probe/renamed");
+        CountingBrowser browser = new CountingBrowser();
+        browser.get(page);
+        long now = System.currentTimeMillis();
+        LocatorCache.get().put(LocatorKey.of(Locators.normalizeUrl(page), "By.id: save"),
+                new Fingerprint(now, Collections.singletonList(
+                        new Fingerprint.Strategy("name", Fingerprint.CSS, "[name=\"save\"]", 0.8f, now, 0))));
+
+        WebElement found = waitFor(browser, 5).untilVisible(By.id("save"));
+
+        assertEquals("save-renamed", found.getAttribute("id"));
+        assertEquals(0, browser.throwingLookups.get());
+    }
+
+    @Test
+    public void aTimeoutExplainsTheMissAsALookupWould() {
+        CountingBrowser browser = new CountingBrowser();
+        browser.get(TestPages.url("probe/missing"));
+
+        try {
+            waitFor(browser, 1).untilPresent(By.id("missing"));
+            fail();
+        } catch (TimeoutException expected) {
+            assertTrue(expected.getCause() instanceof NoSuchElementException);
+            assertTrue(expected.getCause().getMessage(), expected.getCause().getMessage().contains("By.id: missing"));
+        }
+        assertEquals(0, browser.throwingLookups.get());
+    }
+}
@@ -0,0 +1,76 @@
+package com.sm1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+
+public class RateLimitedLogTest {
+
+    private final Logger logger = Logger.getLogger(RateLimitedLogTest.class.getName());
+    private final List<LogRecord> records = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            records.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Before
+    public void capture() {
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+    }
+
+    @After
+    public void release() {
+        logger.removeHandler(handler);
+        logger.setUseParentHandlers(true);
+    }
+
+    @Test
+    public void repeatedFailuresAreSummarized() throws InterruptedException {
+        RateLimitedLog log = new RateLimitedLog(logger, Level.INFO, 100, 10);
+        for (int i = 0; i < 5; i++) {
+            log.failure("By.id: save", "no backup locators stored");
+        }
+        assertEquals(1, records.size());
+
+        Thread.sleep(150);
+        log.failure("By.id: save", "no backup locators stored");
+        assertEquals(2, records.size());
+        assertEquals(5, records.get(1).getParameters()[2]);
+    }
+
+    @Test
+    public void onlyTheMostRecentKeysAreKept() {
+        RateLimitedLog log = new RateLimitedLog(logger, Level.INFO, 60_000, 10);
+        for (int i = 0; i < 1000; i++) {
+            log.failure("By.id: field" + i, "no backup locators stored");
+        }
+        assertEquals(1000, records.size());
+
+        // the first key's window was dropped long ago, so it is logged in full again
+        log.failure("By.id: field0", "no backup locators stored");
+        assertEquals(1001, records.size());
+        // the last key's window is still open
+        log.failure("By.id: field999", "no backup locators stored");
+        assertEquals(1001, records.size());
+    }
+}
@@ -0,0 +1,37 @@
+package com.sm1;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RelearnPolicyTest {
+
+    private static Fingerprint learnedAt(long millis) {
+        return new Fingerprint(millis, Collections.singletonList(
+                new Fingerprint.Strategy("id", Fingerprint.CSS, "[id=\"save\"]", 0.95f, millis, 0)));
+    }
+
+    @Test
+    public void ttlCountsFromWhenTheStoredLocatorsWereLearned() {
+        LocatorKey key = LocatorKey.of(Locators.normalizeUrl(TestPages.url("relearn/stored")), "By.id: save");
+        // learned by an earlier run, which this JVM's learner knows nothing about
+        LocatorCache.get().put(key, learnedAt(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5)));
+
+        LocatorLearner learner = LocatorLearner.get();
+        assertFalse(RelearnPolicy.always().withTtl(1, TimeUnit.HOURS).shouldLearn(key, learner));
+        assertTrue(RelearnPolicy.always().withTtl(1, TimeUnit.MINUTES).shouldLearn(key, learner));
+        assertTrue(RelearnPolicy.always().shouldLearn(key, learner));
+    }
+
+    @Test
+    public void unlearnedLocatorsAreLearned() {
+        LocatorKey key = LocatorKey.of(Locators.normalizeUrl(TestPages.url("relearn/new")), "By.id: save");
+
+        assertTrue(RelearnPolicy.always().withTtl(1, TimeUnit.HOURS).shouldLearn(key, LocatorLearner.get()));
+        assertFalse(RelearnPolicy.always().withSampleRate(0.0).shouldLearn(key, LocatorLearner.get()));
+    }
+}
@@ -0,0 +1,30 @@
+package com.sm1;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Page URLs unique to one test run. The locator store outlives the run, as do the caches, redirects
+ * and breakers within it, so each test works on pages nothing else has seen.
+ */
+final class TestPages {
+
+    private static final String HOST = randomLetters(10) + ".test";
+
+    private TestPages() {
+    }
+
+    /**
+     * @param path A path without digits or long hex runs, so URL normalization leaves it alone.
+     */
+    static String url(String path) {
+        return "https://" + HOST + "/" + path;
+    }
+
+    private static String randomLetters(int count) {
+        StringBuilder letters = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            letters.append((char) ('g' + ThreadLocalRandom.current().nextInt(20)));
+        }
+        return letters.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package com.sm1;
+
+import org.junit.Test;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.TimeoutException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UntilAsyncTest {
+
+    private static BetterFluentWait<String> waitFor(long timeoutMillis) {
+        return new BetterFluentWait<>("input")
+                .withTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .pollingEvery(10, TimeUnit.MILLISECONDS)
+                .ignoring(NoSuchElementException.class);
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (java.util.concurrent.TimeoutException e) {
+            throw new AssertionError("the wait did not finish", e);
+        }
+    }
+
+    @Test
+    public void completesWithTheValueOnAnotherThread() throws Exception {
+        AtomicInteger polls = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+
+        CompletableFuture<String> future = waitFor(2000).untilAsync(input -> {
+            assertFalse(Thread.currentThread() == caller);
+            if (polls.incrementAndGet() < 3) {
+                throw new NoSuchElementException("not yet");
+            }
+            return input + " ready";
+        });
+
+        assertEquals("input ready", future.get(5, TimeUnit.SECONDS));
+        assertEquals(3, polls.get());
+    }
+
+    @Test
+    public void timesOutAndPropagatesLikeUntil() throws Exception {
+        Throwable timedOut = failure(waitFor(50).untilAsync(input -> {
+            throw new NoSuchElementException("never");
+        }));
+        assertTrue(String.valueOf(timedOut), timedOut instanceof TimeoutException);
+        assertTrue(timedOut.getCause() instanceof NoSuchElementException);
+
+        Throwable failed = failure(waitFor(2000).untilAsync(input -> {
+            throw new IllegalStateException("broken");
+        }));
+        assertTrue(String.valueOf(failed), failed.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void cancellingStopsTheEvaluations() throws InterruptedException {
+        AtomicInteger polls = new AtomicInteger();
+
+        CompletableFuture<Object> future = waitFor(5000).untilAsync(input -> {
+            polls.incrementAndGet();
+            return null;
+        });
+        Thread.sleep(50);
+        future.cancel(false);
+
+        int cancelledAt = polls.get();
+        Thread.sleep(100);
+        assertTrue(polls.get() <= cancelledAt + 1);
+    }
+}
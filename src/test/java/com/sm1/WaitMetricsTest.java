@@ -0,0 +1,80 @@
+package com.sm1;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sm1.fake.FakeBrowser;
+import com.sm1.fake.FakeElement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WaitMetricsTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static BetterFluentWait<WebDriver> waitFor(WebDriver driver, long timeoutMillis, WaitMetrics metrics) {
+        return new BetterFluentWait<WebDriver>(driver)
+                .withTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .pollingEvery(20, TimeUnit.MILLISECONDS)
+                .ignoring(NoSuchElementException.class)
+                .withListener(metrics);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> section(Map<String, Object> report, String name) {
+        return (Map<String, Object>) report.get(name);
+    }
+
+    @Test
+    public void waitsRecoveryAndLearningAreCounted() throws InterruptedException, IOException {
+        WaitMetrics metrics = new WaitMetrics();
+        FakeBrowser browser = new FakeBrowser(url -> Collections.singletonList(
+                new FakeElement("save", "Save", "form", 1, 0, 800)), 0, TimeUnit.MILLISECONDS);
+        browser.get(TestPages.url("metrics"));
+
+        By save = By.id("save");
+        waitFor(browser, 1000, metrics).until(ExpectedConditions.presenceOfElementLocated(save));
+        Thread.sleep(900);
+        // renamed since, so the name strategy recovers it; the rename is late enough that the first
+        // wait learns the original id even when opening the store is slow
+        waitFor(browser, 1000, metrics).withLearningMode(LearningMode.OFF).until(ExpectedConditions.presenceOfElementLocated(save));
+        try {
+            waitFor(browser, 100, metrics).withLearningMode(LearningMode.OFF).until(ExpectedConditions.presenceOfElementLocated(By.id("missing")));
+            fail();
+        } catch (TimeoutException expected) {
+        }
+
+        Map<String, Object> report = metrics.snapshot();
+        assertEquals(2L, section(report, "waits").get("satisfied"));
+        assertEquals(1L, section(report, "waits").get("timedOut"));
+
+        Map<String, Object> fallback = section(report, "fallback");
+        assertEquals(1L, fallback.get("recoveries"));
+        assertTrue(String.valueOf(fallback), (Long) fallback.get("attempts") > 1);
+        assertTrue(String.valueOf(fallback), section(fallback, "byStrategy").containsKey("name"));
+        assertEquals(1L, section(report, "learningMicros").get("count"));
+
+        Path file = folder.getRoot().toPath().resolve("metrics.json");
+        metrics.writeJson(file);
+        JsonObject written = new JsonParser().parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals(2, written.getAsJsonObject("waits").get("satisfied").getAsInt());
+    }
+}
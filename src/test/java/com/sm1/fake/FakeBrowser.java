@@ -0,0 +1,515 @@
+package com.sm1.fake;
+
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NoSuchFrameException;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.ScriptTimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.logging.Logs;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * A browser stand-in for the tests and for end-to-end runs without a grid; the benchmarks module
+ * gets it through the test jar. Every command costs a fixed round trip, pages are built from
+ * {@link FakeElement}s when loaded, and the BetterWait scripts are answered from the elements'
+ * current state, including having to install the helpers again on each page.
+ *
+ * <p>
+ * The observe script of {@code WaitMode.OBSERVE} is answered by checking the elements until one
+ * matches, within the slice it is given and the script timeout set through {@link #manage()}.
+ * {@link #navigate()} keeps a history for back and forward; there is one window and no frames,
+ * cookies or alerts.
+ */
+public class FakeBrowser implements WebDriver, JavascriptExecutor {
+
+    // what the check in front of each script call returns when the helpers are missing
+    private static final String NOT_INSTALLED = "__betterWaitNotInstalled";
+    private static final String INSTALL_MARKER = "window.__betterWait.version =";
+    private static final double MIN_SCORE = 0.35;
+    private static final String OBSERVE_MARKER = "new MutationObserver(";
+    private static final long OBSERVE_CHECK_MILLIS = 10;
+
+    private final Function<String, List<FakeElement>> pages;
+    private final long latencyNanos;
+    private final LongAdder commands = new LongAdder();
+
+    private volatile String url = "about:blank";
+    private volatile List<FakeElement> elements = Collections.emptyList();
+    private volatile boolean installed;
+    // the W3C default
+    private volatile long scriptTimeoutMillis = 30000;
+
+    // guarded by history
+    private final List<String> history = new ArrayList<>();
+    private int position = -1;
+
+    /**
+     * @param pages Builds the elements of the page at a URL.
+     * @param latency The round trip of each command.
+     * @param unit The unit of the latency.
+     */
+    public FakeBrowser(Function<String, List<FakeElement>> pages, long latency, TimeUnit unit) {
+        this.pages = pages;
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * @return the script timeout last set through {@link #manage()}, in milliseconds.
+     */
+    public long getScriptTimeoutMillis() {
+        return scriptTimeoutMillis;
+    }
+
+    /**
+     * @return how many commands have been sent to this browser.
+     */
+    public long getCommands() {
+        return commands.sum();
+    }
+
+    private void roundTrip() {
+        commands.increment();
+        long deadline = System.nanoTime() + latencyNanos;
+        for (long left = latencyNanos; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+        }
+    }
+
+    @Override
+    public void get(String url) {
+        synchronized (history) {
+            history.subList(position + 1, history.size()).clear();
+            history.add(url);
+            position++;
+        }
+        load(url);
+    }
+
+    private void load(String url) {
+        roundTrip();
+        List<FakeElement> page = pages.apply(url);
+        long now = now();
+        for (FakeElement element : page) {
+            element.loaded(now);
+        }
+        this.elements = page;
+        this.url = url;
+        this.installed = false;
+    }
+
+    @Override
+    public Object executeScript(String script, Object... args) {
+        roundTrip();
+
+        boolean generate = script.contains("bw.generateLocators");
+        boolean generatePage = script.contains("bw.generatePageLocators");
+        boolean findEach = script.contains("bw.findEach");
+        if (!generate && !generatePage && !findEach && !script.contains("bw.tryLocators")) {
+            return null;
+        }
+        if (!installed && !script.contains(INSTALL_MARKER)) {
+            return NOT_INSTALLED;
+        }
+        installed = true;
+
+        if (generatePage) {
+            return Arrays.asList(url, generatePage());
+        }
+        if (findEach) {
+            return Arrays.asList(url, findEach((List<?>) args[0]));
+        }
+        return Arrays.asList(url, generate ? generate(args[0]) : tryLocators((List<?>) args[0]));
+    }
+
+    /**
+     * Looks up each {@code [kind, selector, strategies]} query by its selector, then by its
+     * strategies, as the find script does.
+     */
+    private Object findEach(List<?> queries) {
+        long now = now();
+        List<Object> found = new ArrayList<>();
+        for (Object entry : queries) {
+            Object element = null;
+            if (entry != null) {
+                List<?> query = (List<?>) entry;
+                for (FakeElement candidate : elements) {
+                    if (candidate.matchesSelector((String) query.get(1), now)) {
+                        element = candidate;
+                        break;
+                    }
+                }
+                if (element == null && query.get(2) != null) {
+                    element = tryLocators((List<?>) query.get(2));
+                }
+            }
+            found.add(element);
+        }
+        return found;
+    }
+
+    /**
+     * Describes every loaded element under its {@code By.id} and {@code By.name} lookups, as the
+     * page script does.
+     */
+    private Object generatePage() {
+        long now = now();
+        List<Object> found = new ArrayList<>();
+        for (FakeElement element : elements) {
+            if (element.isPresent(now)) {
+                Map<String, Object> generated = new HashMap<>();
+                generated.put("strategies", element.strategies(now));
+                generated.put("partial", false);
+                found.add(Arrays.asList(element.lookups(now), generated));
+            }
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("elements", found);
+        result.put("partial", false);
+        return result;
+    }
+
+    private Object generate(Object element) {
+        if (!(element instanceof FakeElement)) {
+            return null;
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("strategies", ((FakeElement) element).strategies(now()));
+        result.put("partial", false);
+        return result;
+    }
+
+    /**
+     * Scores each element by the strategies that match it, as the try script does.
+     */
+    private Object tryLocators(List<?> strategies) {
+        long now = now();
+        FakeElement best = null;
+        double bestScore = 0;
+        long bestIndex = -1;
+
+        for (FakeElement element : elements) {
+            double score = 0;
+            double strongest = 0;
+            long index = -1;
+            for (int i = 0; i < strategies.size(); i++) {
+                List<?> strategy = (List<?>) strategies.get(i);
+                double confidence = ((Number) strategy.get(3)).doubleValue();
+                if (element.matchesSelector((String) strategy.get(2), now)) {
+                    score += confidence;
+                    if (confidence > strongest) {
+                        strongest = confidence;
+                        index = i;
+                    }
+                }
+            }
+            if (score > bestScore) {
+                best = element;
+                bestScore = score;
+                bestIndex = index;
+            }
+        }
+
+        return best == null || bestScore < MIN_SCORE ? null : Arrays.asList(best, bestIndex);
+    }
+
+    @Override
+    public Object executeAsyncScript(String script, Object... args) {
+        if (script.contains(OBSERVE_MARKER)) {
+            return observe((String) args[1], ((Number) args[3]).longValue());
+        }
+        return executeScript(script, args);
+    }
+
+    /**
+     * Waits for an element matching the selector, as the observe script does. Visibility is
+     * presence here, as for {@link FakeElement#isDisplayed()}.
+     */
+    private Object observe(String selector, long sliceMillis) {
+        roundTrip();
+        List<FakeElement> page = elements;
+        long started = now();
+        long limit = Math.min(sliceMillis, scriptTimeoutMillis);
+
+        while (true) {
+            if (elements != page) {
+                throw new JavascriptException("document unloaded while waiting for the result");
+            }
+            long now = now();
+            for (FakeElement element : page) {
+                if (element.matchesSelector(selector, now)) {
+                    return element;
+                }
+            }
+            if (now - started >= limit) {
+                if (limit < sliceMillis) {
+                    throw new ScriptTimeoutException("Timed out waiting for async script result after "
+                            + (now - started) + " ms");
+                }
+                return null;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(OBSERVE_CHECK_MILLIS));
+        }
+    }
+
+    @Override
+    public String getCurrentUrl() {
+        roundTrip();
+        return url;
+    }
+
+    @Override
+    public String getTitle() {
+        roundTrip();
+        return "";
+    }
+
+    @Override
+    public List<WebElement> findElements(By by) {
+        roundTrip();
+        long now = now();
+        List<WebElement> found = new ArrayList<>();
+        for (FakeElement element : elements) {
+            if (element.matches(by, now)) {
+                found.add(element);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public WebElement findElement(By by) {
+        roundTrip();
+        long now = now();
+        for (FakeElement element : elements) {
+            if (element.matches(by, now)) {
+                return element;
+            }
+        }
+        throw new NoSuchElementException("Unable to locate element: " + by);
+    }
+
+    @Override
+    public String getPageSource() {
+        roundTrip();
+        return "";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void quit() {
+    }
+
+    @Override
+    public Set<String> getWindowHandles() {
+        return Collections.singleton("main");
+    }
+
+    @Override
+    public String getWindowHandle() {
+        return "main";
+    }
+
+    @Override
+    public TargetLocator switchTo() {
+        return new FakeTargetLocator();
+    }
+
+    @Override
+    public Navigation navigate() {
+        return new FakeNavigation();
+    }
+
+    @Override
+    public Options manage() {
+        return new FakeOptions();
+    }
+
+    private final class FakeNavigation implements Navigation {
+
+        @Override
+        public void back() {
+            move(-1);
+        }
+
+        @Override
+        public void forward() {
+            move(1);
+        }
+
+        private void move(int step) {
+            String target;
+            synchronized (history) {
+                int moved = position + step;
+                if (moved < 0 || moved >= history.size()) {
+                    roundTrip();
+                    return;
+                }
+                position = moved;
+                target = history.get(moved);
+            }
+            load(target);
+        }
+
+        @Override
+        public void to(String url) {
+            get(url);
+        }
+
+        @Override
+        public void to(URL url) {
+            get(url.toString());
+        }
+
+        @Override
+        public void refresh() {
+            load(url);
+        }
+    }
+
+    private final class FakeOptions implements Options {
+
+        @Override
+        public void addCookie(Cookie cookie) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteCookieNamed(String name) {
+        }
+
+        @Override
+        public void deleteCookie(Cookie cookie) {
+        }
+
+        @Override
+        public void deleteAllCookies() {
+        }
+
+        @Override
+        public Set<Cookie> getCookies() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public Cookie getCookieNamed(String name) {
+            return null;
+        }
+
+        @Override
+        public Timeouts timeouts() {
+            return new FakeTimeouts();
+        }
+
+        @Override
+        public ImeHandler ime() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Window window() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Logs logs() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Only the script timeout has an effect, on the observe script.
+     */
+    private final class FakeTimeouts implements Timeouts {
+
+        @Override
+        public Timeouts implicitlyWait(long time, TimeUnit unit) {
+            roundTrip();
+            return this;
+        }
+
+        @Override
+        public Timeouts setScriptTimeout(long time, TimeUnit unit) {
+            roundTrip();
+            scriptTimeoutMillis = unit.toMillis(time);
+            return this;
+        }
+
+        @Override
+        public Timeouts pageLoadTimeout(long time, TimeUnit unit) {
+            roundTrip();
+            return this;
+        }
+    }
+
+    private final class FakeTargetLocator implements TargetLocator {
+
+        @Override
+        public WebDriver frame(int index) {
+            throw new NoSuchFrameException("No frame " + index);
+        }
+
+        @Override
+        public WebDriver frame(String nameOrId) {
+            throw new NoSuchFrameException("No frame " + nameOrId);
+        }
+
+        @Override
+        public WebDriver frame(WebElement frameElement) {
+            throw new NoSuchFrameException("Not a frame: " + frameElement);
+        }
+
+        @Override
+        public WebDriver parentFrame() {
+            return FakeBrowser.this;
+        }
+
+        @Override
+        public WebDriver window(String nameOrHandle) {
+            if (!getWindowHandle().equals(nameOrHandle)) {
+                throw new NoSuchWindowException("No window " + nameOrHandle);
+            }
+            return FakeBrowser.this;
+        }
+
+        @Override
+        public WebDriver defaultContent() {
+            return FakeBrowser.this;
+        }
+
+        @Override
+        public WebElement activeElement() {
+            throw new NoSuchElementException("No element has focus");
+        }
+
+        @Override
+        public Alert alert() {
+            throw new NoAlertPresentException();
+        }
+    }
+}
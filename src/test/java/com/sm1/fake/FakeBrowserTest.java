@@ -0,0 +1,103 @@
+package com.sm1.fake;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.ScriptTimeoutException;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FakeBrowserTest {
+
+    private static FakeBrowser browser(long renamedAfterMillis) {
+        return new FakeBrowser(url -> Arrays.asList(
+                new FakeElement("save", "Save", "form", 1, 0, renamedAfterMillis),
+                new FakeElement(url.endsWith("/late") ? "late" : "other", "Late", "form", 2, 200, -1)),
+                0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void elementsAppearAndAreRenamedAfterLoading() throws InterruptedException {
+        FakeBrowser browser = browser(100);
+        browser.get("https://fake.test/late");
+
+        assertEquals("save", browser.findElement(By.id("save")).getAttribute("id"));
+        assertTrue(browser.findElements(By.id("late")).isEmpty());
+
+        Thread.sleep(250);
+        assertTrue(browser.findElements(By.id("save")).isEmpty());
+        assertEquals(1, browser.findElements(By.id("save-renamed")).size());
+        assertEquals(1, browser.findElements(By.name("save")).size());
+        assertEquals(1, browser.findElements(By.id("late")).size());
+    }
+
+    @Test
+    public void navigationKeepsAHistory() {
+        FakeBrowser browser = browser(-1);
+        browser.get("https://fake.test/first");
+        browser.get("https://fake.test/late");
+
+        browser.navigate().back();
+        assertEquals("https://fake.test/first", browser.getCurrentUrl());
+        assertTrue(browser.findElements(By.id("late")).isEmpty());
+
+        browser.navigate().forward();
+        browser.navigate().forward();
+        assertEquals("https://fake.test/late", browser.getCurrentUrl());
+
+        try {
+            browser.findElement(By.id("missing"));
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void observeHonoursTheSliceAndTheScriptTimeout() {
+        FakeBrowser browser = browser(-1);
+        browser.get("https://fake.test/late");
+        String observe = "new MutationObserver(";
+
+        assertNull(browser.executeAsyncScript(observe, "css", "[id=\"late\"]", false, 20L));
+        Object found = browser.executeAsyncScript(observe, "css", "[id=\"late\"]", false, 1000L);
+        assertSame(browser.findElement(By.id("late")), found);
+
+        browser.manage().timeouts().setScriptTimeout(20, TimeUnit.MILLISECONDS);
+        try {
+            browser.executeAsyncScript(observe, "css", "[id=\"missing\"]", false, 1000L);
+            fail();
+        } catch (ScriptTimeoutException expected) {
+        }
+    }
+
+    @Test
+    public void observeFailsWhenThePageUnloads() throws InterruptedException {
+        FakeBrowser browser = browser(-1);
+        browser.get("https://fake.test/first");
+
+        Thread navigation = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            browser.navigate().refresh();
+        });
+        navigation.start();
+        try {
+            browser.executeAsyncScript("new MutationObserver(", "css", "[id=\"missing\"]", false, 1000L);
+            fail();
+        } catch (JavascriptException expected) {
+        } finally {
+            navigation.join();
+        }
+    }
+}
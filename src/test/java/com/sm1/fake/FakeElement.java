@@ -0,0 +1,122 @@
+package com.sm1.fake;
+
+import org.openqa.selenium.By;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A button on a {@link FakeBrowser} page. It is missing from the page until it appears, and its
+ * id can be renamed part way through, which breaks {@code By.id} and the id strategy but leaves
+ * the other backup locators intact.
+ */
+public class FakeElement extends StubElement {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private final String id;
+    private final String text;
+    private final String parentId;
+    private final int position;
+    private final long appearsAfterMillis;
+    private final long renamedAfterMillis;
+
+    private volatile long loadedAt;
+
+    /**
+     * @param id The element's id until it is renamed.
+     * @param text The button text.
+     * @param parentId The id of the form holding it.
+     * @param position Its position among the form's buttons, from 1.
+     * @param appearsAfterMillis How long after the page loads it is added.
+     * @param renamedAfterMillis How long after the page loads its id changes, or a negative number
+     *        for never.
+     */
+    public FakeElement(String id, String text, String parentId, int position,
+                       long appearsAfterMillis, long renamedAfterMillis) {
+        this.id = id;
+        this.text = text;
+        this.parentId = parentId;
+        this.position = position;
+        this.appearsAfterMillis = appearsAfterMillis;
+        this.renamedAfterMillis = renamedAfterMillis < 0 ? NEVER : renamedAfterMillis;
+    }
+
+    void loaded(long now) {
+        this.loadedAt = now;
+    }
+
+    boolean isPresent(long now) {
+        return now - loadedAt >= appearsAfterMillis;
+    }
+
+    private String currentId(long now) {
+        return now - loadedAt >= renamedAfterMillis ? id + "-renamed" : id;
+    }
+
+    boolean matches(By by, long now) {
+        String description = by.toString();
+        return isPresent(now) && (description.equals("By.id: " + currentId(now))
+                || description.equals("By.name: " + id));
+    }
+
+    /**
+     * @return the lookups the page script would describe this element under.
+     */
+    List<String> lookups(long now) {
+        return Arrays.asList("By.id: " + currentId(now), "By.name: " + id);
+    }
+
+    /**
+     * @return the strategies the generate script would return for this element, as
+     *         {@code [type, kind, selector, score]} lists.
+     */
+    List<Object> strategies(long now) {
+        List<Object> strategies = new ArrayList<>();
+        strategies.add(Arrays.asList("id", "css", "[id=\"" + currentId(now) + "\"]", 0.95));
+        strategies.add(Arrays.asList("name", "css", "[name=\"" + id + "\"]", 0.8));
+        strategies.add(Arrays.asList("anchored", "css",
+                "[id=\"" + parentId + "\"] > BUTTON:nth-of-type(" + position + ")", 0.7));
+        strategies.add(Arrays.asList("text", "xpath",
+                "//button[text()[contains(normalize-space(.), \"" + text + "\")]]", 0.6));
+        strategies.add(Arrays.asList("tag-path", "css",
+                "BODY FORM:nth-of-type(1) BUTTON:nth-of-type(" + position + ")", 0.4));
+        return strategies;
+    }
+
+    boolean matchesSelector(String selector, long now) {
+        if (!isPresent(now)) {
+            return false;
+        }
+        for (Object strategy : strategies(now)) {
+            if (((List<?>) strategy).get(2).equals(selector)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getAttribute(String name) {
+        if ("id".equals(name)) {
+            return currentId(FakeBrowser.now());
+        }
+        return "name".equals(name) ? id : null;
+    }
+
+    @Override
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public boolean isDisplayed() {
+        return isPresent(FakeBrowser.now());
+    }
+
+    @Override
+    public String toString() {
+        return "button#" + id;
+    }
+}